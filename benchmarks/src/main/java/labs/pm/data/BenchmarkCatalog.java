@@ -0,0 +1,117 @@
+package labs.pm.data;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.PropertyResourceBundle;
+import java.util.ResourceBundle;
+import java.util.stream.Stream;
+
+/**
+ * Builds isolated ProductManager instances for benchmarks. Every instance
+ * gets its own data, report and temp folders under a temporary root.
+ */
+final class BenchmarkCatalog {
+    static final String[] LANGUAGE_TAGS = {"en-GB", "en-US", "ru-RU", "zh-CN"};
+
+    private BenchmarkCatalog() {
+    }
+
+    static Path createRoot() {
+        try {
+            Path root = Files.createTempDirectory("pm-bench");
+            Files.createDirectories(root.resolve("data"));
+            Files.createDirectories(root.resolve("reports"));
+            Files.createDirectories(root.resolve("temp"));
+            return root;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @param overrides {@code key=value} lines that replace the builder defaults
+     */
+    static ResourceBundle config(Path root, String... overrides) {
+        String properties = String.join("\n",
+                "product.data.format={0},{1},{2},{3},{4},{5}",
+                "review.data.format={0},{1}",
+                "report.folder=" + root.resolve("reports"),
+                "data.folder=" + root.resolve("data"),
+                "temp.folder=" + root.resolve("temp"),
+                "report.file=product{0}report_{1}.txt",
+                "product.data.file=product{0}.csv",
+                "reviews.data.file=reviews{0}.csv",
+                "temp.file={0}.tmp",
+                "review.store=" + System.getProperty("review.store", "heap"),
+                String.join("\n", overrides));
+        try {
+            return new PropertyResourceBundle(new StringReader(properties.replace("\\", "\\\\")));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static ProductManager newManager(Path root, String... overrides) {
+        return ProductManager.builder().config(config(root, overrides)).build();
+    }
+
+    static PartitionedProductManager newPartitioned(Path root, int partitions, String... overrides) {
+        return ProductManager.builder().config(config(root, overrides)).buildPartitioned(partitions);
+    }
+
+    static void populate(ProductManager pm, int size) {
+        LocalDate today = LocalDate.now();
+        for (int id = 0; id < size; id++) {
+            BigDecimal price = BigDecimal.valueOf(100 + id % 900, 2);
+            Rating rating = Rating.values()[id % Rating.values().length];
+            if (id % 2 == 0) {
+                pm.createProduct(id, "Food" + id, price, rating, today.plusDays(id % 3));
+            } else {
+                pm.createProduct(id, "Drink" + id, price, rating);
+            }
+        }
+    }
+
+    static void review(ProductManager pm, int id, int count) {
+        for (int i = 0; i < count; i++) {
+            pm.reviewProduct(id, Rating.values()[1 + i % 5], "Review " + i);
+        }
+    }
+
+    static void writeDataFiles(Path root, int size, int reviewsPerProduct) {
+        Path data = root.resolve("data");
+        LocalDate today = LocalDate.now();
+        try {
+            for (int id = 0; id < size; id++) {
+                String product = (id % 2 == 0)
+                        ? "F," + id + ",Food" + id + "," + BigDecimal.valueOf(100 + id % 900, 2) + "," + id % 6 + "," + today.plusDays(id % 3)
+                        : "D," + id + ",Drink" + id + "," + BigDecimal.valueOf(100 + id % 900, 2) + "," + id % 6 + "," + today;
+                Files.writeString(data.resolve("product" + id + ".csv"), product, StandardCharsets.UTF_8);
+                if (reviewsPerProduct > 0) {
+                    StringBuilder reviews = new StringBuilder();
+                    for (int i = 0; i < reviewsPerProduct; i++) {
+                        reviews.append(1 + i % 5).append(",Review ").append(i).append('\n');
+                    }
+                    Files.writeString(data.resolve("reviews" + id + ".csv"), reviews, StandardCharsets.UTF_8);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static void delete(Path root) {
+        try (Stream<Path> files = Files.walk(root)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package labs.pm.data;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Multi threaded workload that mirrors the Shop client Callable, plus the
+ * review path alone to measure lock contention. Run it with increasing
+ * thread counts ({@code -t 1}, {@code -t 2}, ... {@code -t max}) to see how
+ * throughput scales with cores.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ClientBenchmark {
+
+    @Param({"1000", "100000"})
+    int catalogSize;
+
+    @Param({"100"})
+    int hotProducts;
+
+    private Path root;
+    private ProductManager pm;
+
+    @State(Scope.Thread)
+    public static class Client {
+        String clientId;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            clientId = "Client " + Thread.currentThread().getId();
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        root = BenchmarkCatalog.createRoot();
+        pm = BenchmarkCatalog.newManager(root);
+        BenchmarkCatalog.populate(pm, catalogSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pm.close();
+        BenchmarkCatalog.delete(root);
+    }
+
+    @Benchmark
+    public Map<String, String> shopClient(Client client) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int productId = random.nextInt(hotProducts);
+        String languageTag = BenchmarkCatalog.LANGUAGE_TAGS[random.nextInt(BenchmarkCatalog.LANGUAGE_TAGS.length)];
+        Map<String, String> discounts = pm.getDiscounts(languageTag);
+        pm.reviewProduct(productId, Rating.FOUR_STAR, "Yet another review");
+        pm.printProductReport(productId, languageTag, client.clientId);
+        return discounts;
+    }
+
+    @Benchmark
+    public CompletableFuture<Path> shopClientAsyncReport(Client client) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int productId = random.nextInt(hotProducts);
+        String languageTag = BenchmarkCatalog.LANGUAGE_TAGS[random.nextInt(BenchmarkCatalog.LANGUAGE_TAGS.length)];
+        pm.getDiscounts(languageTag);
+        pm.reviewProduct(productId, Rating.FOUR_STAR, "Yet another review");
+        return pm.printProductReportAsync(productId, languageTag, client.clientId);
+    }
+
+    @Benchmark
+    public Product reviewUnrelatedProducts() {
+        return pm.reviewProduct(ThreadLocalRandom.current().nextInt(catalogSize), Rating.FOUR_STAR, "Yet another review");
+    }
+
+    @Benchmark
+    public Product findProduct() throws ProductManagerException {
+        return pm.findProduct(ThreadLocalRandom.current().nextInt(catalogSize));
+    }
+}
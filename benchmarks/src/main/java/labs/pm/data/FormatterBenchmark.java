@@ -0,0 +1,87 @@
+package labs.pm.data;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.text.MessageFormat;
+import java.text.NumberFormat;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.FormatStyle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.ResourceBundle;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Renders a product report body of {@code reviewCount} reviews from four
+ * threads, once with the compiled {@link ResourceFormatter} and once the way
+ * it used to be done, with MessageFormat.format per line and one NumberFormat
+ * shared by all threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class FormatterBenchmark {
+
+    @Param({"en-GB", "ru-RU"})
+    String languageTag;
+
+    @Param({"10", "1000"})
+    int reviewCount;
+
+    private ResourceFormatter formatter;
+    private ResourceBundle resources;
+    private NumberFormat sharedMoneyFormat;
+    private DateTimeFormatter dateFormat;
+    private Product product;
+    private List<Review> reviews;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Locale locale = Locale.forLanguageTag(languageTag);
+        formatter = new ResourceFormatter(locale);
+        resources = ResourceBundle.getBundle("resources", locale);
+        sharedMoneyFormat = NumberFormat.getCurrencyInstance(locale);
+        dateFormat = DateTimeFormatter.ofLocalizedDate(FormatStyle.SHORT).localizedBy(locale);
+        product = new Food(1, "Cake", BigDecimal.valueOf(399, 2), Rating.FOUR_STAR, LocalDate.now());
+        reviews = new ArrayList<>(reviewCount);
+        for (int i = 0; i < reviewCount; i++) {
+            reviews.add(new Review(Rating.values()[i % 6], "Yet another review"));
+        }
+    }
+
+    @Benchmark
+    public String compiled() throws IOException {
+        StringBuilder out = new StringBuilder();
+        formatter.formatProduct(product, out);
+        out.append(System.lineSeparator());
+        for (Review review : reviews) {
+            formatter.formatReview(review, out);
+            out.append(System.lineSeparator());
+        }
+        return out.toString();
+    }
+
+    @Benchmark
+    public String messageFormat() {
+        StringBuilder out = new StringBuilder();
+        out.append(MessageFormat.format(resources.getString("product"),
+                product.getName(),
+                sharedMoneyFormat.format(product.getPrice()),
+                product.getRating().getStars(),
+                dateFormat.format(product.getBestBefore())) + System.lineSeparator());
+        for (Review review : reviews) {
+            out.append(MessageFormat.format(resources.getString("review"),
+                    review.getRating().getStars(),
+                    review.getComments()) + System.lineSeparator());
+        }
+        return out.toString();
+    }
+}
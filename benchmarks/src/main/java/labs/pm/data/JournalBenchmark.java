@@ -0,0 +1,46 @@
+package labs.pm.data;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of a journaled review write, fsync per record against group
+ * commit, with concurrent writers. Change the writer count with {@code -t}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Threads(8)
+@Fork(1)
+public class JournalBenchmark {
+
+    @Param({"ALWAYS", "GROUP"})
+    String mode;
+
+    private Path root;
+    private Journal journal;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        root = BenchmarkCatalog.createRoot();
+        journal = new Journal(root.resolve("temp"), Journal.SyncMode.valueOf(mode), 0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        journal.close();
+        BenchmarkCatalog.delete(root);
+    }
+
+    @Benchmark
+    public long reviewProduct() throws IOException {
+        long sequence = journal.append(Journal.productReviewed(1, Rating.FOUR_STAR, "Yet another review"));
+        journal.sync(sequence);
+        return sequence;
+    }
+}
@@ -0,0 +1,63 @@
+package labs.pm.data;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scan heavy queries on the object layout against the columnar layout
+ * ({@code store.layout}). Run with {@code -prof gc} to compare the
+ * allocation of the scans, retained heap per product is reported by a
+ * heap histogram of the forked JVM, e.g. {@code jcmd <pid> GC.class_histogram}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class LayoutBenchmark {
+    static final ProductFilter RATING_FILTER = ProductFilter.all().withRating(Rating.FIVE_STAR);
+    static final ProductFilter PRICE_RANGE = ProductFilter.all()
+            .withPriceBetween(BigDecimal.valueOf(500, 2), BigDecimal.valueOf(510, 2));
+
+    @Param({"10000", "100000", "1000000"})
+    int catalogSize;
+
+    @Param({"objects", "columns"})
+    String layout;
+
+    private Path root;
+    private ProductManager pm;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        root = BenchmarkCatalog.createRoot();
+        pm = BenchmarkCatalog.newManager(root, "store.layout=" + layout);
+        BenchmarkCatalog.populate(pm, catalogSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pm.close();
+        BenchmarkCatalog.delete(root);
+    }
+
+    @Benchmark
+    public List<Product> ratingTop50() {
+        return pm.findProducts(RATING_FILTER, ProductManagerBenchmark.RATING_THEN_PRICE, 50);
+    }
+
+    @Benchmark
+    public List<Product> priceRange() {
+        return pm.findProducts(PRICE_RANGE, ProductManagerBenchmark.RATING_THEN_PRICE, Integer.MAX_VALUE);
+    }
+
+    @Benchmark
+    public List<Product> predicateTop50() {
+        return pm.findProducts(ProductManagerBenchmark.PRICE_FILTER, ProductManagerBenchmark.RATING_THEN_PRICE, 50);
+    }
+}
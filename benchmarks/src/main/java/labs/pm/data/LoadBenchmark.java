@@ -0,0 +1,50 @@
+package labs.pm.data;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to load the whole data folder. Each product has its own product
+ * and reviews file, as in the production data folder. With {@code lazy}
+ * loading only lists the folder, products load when first used.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class LoadBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    int catalogSize;
+
+    @Param({"0", "10"})
+    int reviewsPerProduct;
+
+    @Param({"false", "true"})
+    boolean lazy;
+
+    private Path root;
+    private ProductManager pm;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        root = BenchmarkCatalog.createRoot();
+        pm = BenchmarkCatalog.newManager(root, "load.lazy=" + lazy);
+        BenchmarkCatalog.writeDataFiles(root, catalogSize, reviewsPerProduct);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pm.close();
+        BenchmarkCatalog.delete(root);
+    }
+
+    @Benchmark
+    public void loadAllData() {
+        pm.loadAllData();
+    }
+}
@@ -0,0 +1,58 @@
+package labs.pm.data;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the metrics on the cheapest hot paths, with
+ * {@code metrics.enabled} on and off.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class MetricsBenchmark {
+
+    @Param({"false", "true"})
+    boolean metrics;
+
+    @Param({"100000"})
+    int catalogSize;
+
+    private Path root;
+    private ProductManager pm;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        root = BenchmarkCatalog.createRoot();
+        pm = BenchmarkCatalog.newManager(root, "metrics.enabled=" + metrics);
+        BenchmarkCatalog.populate(pm, catalogSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pm.close();
+        BenchmarkCatalog.delete(root);
+    }
+
+    @Benchmark
+    public Product findProduct() throws ProductManagerException {
+        return pm.findProduct(ThreadLocalRandom.current().nextInt(catalogSize));
+    }
+
+    @Benchmark
+    public Product reviewProduct() {
+        return pm.reviewProduct(ThreadLocalRandom.current().nextInt(catalogSize), Rating.FOUR_STAR, "Yet another review");
+    }
+
+    @Benchmark
+    public Map<String, String> getDiscounts() {
+        return pm.getDiscounts("en-GB");
+    }
+}
@@ -0,0 +1,54 @@
+package labs.pm.data;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Catalog scans with the sequential path ({@code parallelism} 0) against
+ * the fork/join query pool, to find the catalog size from which splitting
+ * the scan across cores pays off on the machine at hand.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ParallelQueryBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    int catalogSize;
+
+    @Param({"0", "2", "4", "8"})
+    int parallelism;
+
+    private Path root;
+    private ProductManager pm;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        root = BenchmarkCatalog.createRoot();
+        pm = BenchmarkCatalog.newManager(root, "query.parallelism=" + parallelism);
+        BenchmarkCatalog.populate(pm, catalogSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pm.close();
+        BenchmarkCatalog.delete(root);
+    }
+
+    @Benchmark
+    public List<Product> top50() {
+        return pm.findProducts(ProductManagerBenchmark.PRICE_FILTER, ProductManagerBenchmark.RATING_THEN_PRICE, 50);
+    }
+
+    @Benchmark
+    public List<Product> all() {
+        return pm.findProducts(ProductManagerBenchmark.PRICE_FILTER, ProductManagerBenchmark.RATING_THEN_PRICE,
+                Integer.MAX_VALUE);
+    }
+}
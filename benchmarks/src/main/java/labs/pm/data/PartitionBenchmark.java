@@ -0,0 +1,66 @@
+package labs.pm.data;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write throughput of one manager against the catalog partitioned over
+ * several managers, each with its own store, discount totals and event
+ * stream. Run it with {@code -t max}, more partitions only help once
+ * threads outnumber them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class PartitionBenchmark {
+
+    @Param({"100000"})
+    int catalogSize;
+
+    @Param({"1", "2", "4", "8"})
+    int partitions;
+
+    private Path root;
+    private PartitionedProductManager pm;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        root = BenchmarkCatalog.createRoot();
+        pm = BenchmarkCatalog.newPartitioned(root, partitions);
+        LocalDate today = LocalDate.now();
+        for (int id = 0; id < catalogSize; id++) {
+            BigDecimal price = BigDecimal.valueOf(100 + id % 900, 2);
+            Rating rating = Rating.values()[id % Rating.values().length];
+            if (id % 2 == 0) {
+                pm.createProduct(id, "Food" + id, price, rating, today.plusDays(id % 3));
+            } else {
+                pm.createProduct(id, "Drink" + id, price, rating);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pm.close();
+        BenchmarkCatalog.delete(root);
+    }
+
+    @Benchmark
+    public Product reviewProduct() {
+        return pm.reviewProduct(ThreadLocalRandom.current().nextInt(catalogSize), Rating.FOUR_STAR, "Yet another review");
+    }
+
+    @Benchmark
+    public Map<String, String> getDiscounts() {
+        return pm.getDiscounts("en-GB");
+    }
+}
@@ -0,0 +1,109 @@
+package labs.pm.data;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Single threaded cost of the ProductManager hot paths by catalog size
+ * and by the number of reviews on the reviewed and reported product.
+ * Run with {@code -prof gc} to get allocation rates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ProductManagerBenchmark {
+    static final int HOT_PRODUCT = 0;
+    static final Predicate<Product> PRICE_FILTER = product -> product.getPrice().floatValue() > 2;
+    static final Comparator<Product> RATING_THEN_PRICE =
+            Comparator.<Product>comparingInt(product -> product.getRating().ordinal()).reversed()
+                    .thenComparing(Product::getPrice);
+
+    static final ProductFilter SELECTIVE_FILTER = ProductFilter.all()
+            .withRating(Rating.FIVE_STAR)
+            .withPriceBetween(BigDecimal.valueOf(200, 2), BigDecimal.valueOf(205, 2));
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    int catalogSize;
+
+    @Param({"0", "1000", "100000"})
+    int reviews;
+
+    private Path root;
+    private ProductManager pm;
+    private PrintStream stdout;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        root = BenchmarkCatalog.createRoot();
+        pm = BenchmarkCatalog.newManager(root);
+        BenchmarkCatalog.populate(pm, catalogSize);
+        BenchmarkCatalog.review(pm, HOT_PRODUCT, reviews);
+        stdout = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.setOut(stdout);
+        pm.close();
+        BenchmarkCatalog.delete(root);
+    }
+
+    @Benchmark
+    public Product findProduct() throws ProductManagerException {
+        return pm.findProduct(ThreadLocalRandom.current().nextInt(catalogSize));
+    }
+
+    @Benchmark
+    public Product reviewProduct() {
+        return pm.reviewProduct(HOT_PRODUCT, Rating.FOUR_STAR, "Yet another review");
+    }
+
+    @Benchmark
+    public Map<String, String> getDiscounts() {
+        return pm.getDiscounts("en-GB");
+    }
+
+    @Benchmark
+    public void printProducts() {
+        pm.printProducts(PRICE_FILTER, RATING_THEN_PRICE, "en-GB");
+    }
+
+    @Benchmark
+    public List<Product> top50() {
+        return pm.findProducts(PRICE_FILTER, RATING_THEN_PRICE, 50);
+    }
+
+    @Benchmark
+    public ProductPage firstPage() {
+        return pm.findProducts(PRICE_FILTER, RATING_THEN_PRICE, null, 50);
+    }
+
+    @Benchmark
+    public List<Product> indexedQuery() {
+        return pm.findProducts(SELECTIVE_FILTER, RATING_THEN_PRICE, 50);
+    }
+
+    @Benchmark
+    public List<Product> scannedQuery() {
+        return pm.findProducts(product -> SELECTIVE_FILTER.test(product), RATING_THEN_PRICE, 50);
+    }
+
+    @Benchmark
+    public void printProductReport() {
+        pm.printProductReport(HOT_PRODUCT, "en-GB", "bench");
+    }
+}
@@ -0,0 +1,68 @@
+package labs.pm.data;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A burst of reviews posted one {@code reviewProduct} call at a time
+ * against one {@code reviewProducts} batch, with and without the journal.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ReviewBatchBenchmark {
+
+    @Param({"10000"})
+    int catalogSize;
+
+    @Param({"1000", "100000"})
+    int burstSize;
+
+    @Param({"false", "true"})
+    boolean journal;
+
+    private Path root;
+    private ProductManager pm;
+    private List<ProductReview> burst;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        root = BenchmarkCatalog.createRoot();
+        pm = BenchmarkCatalog.newManager(root, "journal.enabled=" + journal);
+        BenchmarkCatalog.populate(pm, catalogSize);
+        Random random = new Random(42);
+        burst = new ArrayList<>(burstSize);
+        for (int i = 0; i < burstSize; i++) {
+            burst.add(new ProductReview(random.nextInt(catalogSize), Rating.values()[1 + random.nextInt(5)],
+                    "Yet another review"));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pm.close();
+        BenchmarkCatalog.delete(root);
+    }
+
+    @Benchmark
+    public Product oneByOne() {
+        Product last = null;
+        for (ProductReview review : burst) {
+            last = pm.reviewProduct(review.getProductId(), review.getRating(), review.getComments());
+        }
+        return last;
+    }
+
+    @Benchmark
+    public List<Product> batch() {
+        return pm.reviewProducts(burst);
+    }
+}
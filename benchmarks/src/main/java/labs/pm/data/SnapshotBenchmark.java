@@ -0,0 +1,90 @@
+package labs.pm.data;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Binary snapshot against Java serialization of the same catalog.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class SnapshotBenchmark {
+
+    @Param({"10000"})
+    int catalogSize;
+
+    @Param({"100"})
+    int reviewsPerProduct;
+
+    private Path root;
+    private Map<Product, List<Review>> products;
+    private Path snapshot;
+    private Path serialized;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        root = BenchmarkCatalog.createRoot();
+        products = new HashMap<>();
+        LocalDate today = LocalDate.now();
+        for (int id = 0; id < catalogSize; id++) {
+            BigDecimal price = BigDecimal.valueOf(100 + id % 900, 2);
+            Product product = (id % 2 == 0)
+                    ? new Food(id, "Food" + id, price, Rating.FOUR_STAR, today)
+                    : new Drink(id, "Drink" + id, price, Rating.THREE_STAR);
+            List<Review> reviews = new ArrayList<>(reviewsPerProduct);
+            for (int i = 0; i < reviewsPerProduct; i++) {
+                reviews.add(new Review(Rating.values()[1 + i % 5], "Review " + i % 50));
+            }
+            products.put(product, reviews);
+        }
+        snapshot = root.resolve("temp").resolve("snapshot.tmp");
+        serialized = root.resolve("temp").resolve("serialized.tmp");
+        writeSnapshot();
+        writeSerialized();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkCatalog.delete(root);
+    }
+
+    @Benchmark
+    public void writeSnapshot() throws IOException {
+        SnapshotFormat.write(snapshot, products);
+    }
+
+    @Benchmark
+    public Map<Product, List<Review>> readSnapshot() throws IOException {
+        return SnapshotFormat.read(snapshot);
+    }
+
+    @Benchmark
+    public void writeSerialized() throws IOException {
+        try (ObjectOutputStream out = new ObjectOutputStream(Files.newOutputStream(serialized))) {
+            out.writeObject(products);
+        }
+    }
+
+    @Benchmark
+    public Object readSerialized() throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(Files.newInputStream(serialized))) {
+            return in.readObject();
+        }
+    }
+}
@@ -5,6 +5,8 @@ import labs.pm.data.ProductManager;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -13,8 +15,42 @@ import java.util.stream.Stream;
 
 import static labs.pm.data.Rating.*;
 
+/**
+ * Simulated shop clients. The load is set with system properties:
+ * <pre>
+ * shop.clients        number of clients (20)
+ * shop.executor       platform or virtual (platform), virtual threads need Java 21
+ * shop.threads        platform thread pool size (3)
+ * shop.products.from  first product id clients pick from (101)
+ * shop.products.to    last product id clients pick from (111)
+ * shop.locales        comma separated language tags, repeat a tag to weight it (all supported)
+ * shop.reviews        reviews posted by each client (1)
+ * shop.reports        reports printed by each client (1)
+ * shop.log            print every client log (true)
+ * </pre>
+ * Journal and report files are written outside stripe locks and monitors,
+ * the mapped review store writes into mapped memory under ReentrantLocks
+ * and maps the file on its own thread, so clients on virtual threads do
+ * not pin while they wait for I/O.
+ */
 public class Shop {
     public static void main(String[] args) {
+        int clientTotal = Integer.getInteger("shop.clients", 20);
+        String executorType = System.getProperty("shop.executor", "platform");
+        int threads = Integer.getInteger("shop.threads", 3);
+        int firstProduct = Integer.getInteger("shop.products.from", 101);
+        int lastProduct = Integer.getInteger("shop.products.to", 111);
+        if (firstProduct > lastProduct) {
+            throw new IllegalArgumentException("shop.products.from " + firstProduct
+                    + " is after shop.products.to " + lastProduct);
+        }
+        List<String> languageTags = (System.getProperty("shop.locales") == null)
+                ? new ArrayList<>(ProductManager.getSupportedFormat())
+                : Arrays.asList(System.getProperty("shop.locales").split(","));
+        int reviews = Integer.getInteger("shop.reviews", 1);
+        int reports = Integer.getInteger("shop.reports", 1);
+        boolean printLogs = Boolean.parseBoolean(System.getProperty("shop.log", "true"));
+
         ProductManager pm = ProductManager.getInstance();
         pm.createProduct(111, "ExtraCake", BigDecimal.valueOf(5.99), FOUR_STAR, LocalDate.now());
         pm.reviewProduct(111, FOUR_STAR, "Nice, yummy cake!");
@@ -23,15 +59,14 @@ public class Shop {
         pm.reviewProduct(111, FIVE_STAR, "Delicious!");
 
         AtomicInteger clientCount = new AtomicInteger(0);
+        long[] latencies = new long[clientTotal];
         Callable<String> client = () -> {
-            String clientId = "Client " + clientCount.incrementAndGet();
+            long start = System.nanoTime();
+            int clientNumber = clientCount.incrementAndGet();
+            String clientId = "Client " + clientNumber;
             String threadName = Thread.currentThread().getName();
-            int productId = ThreadLocalRandom.current().nextInt(11) + 101;
-            String languageTag = ProductManager.getSupportedFormat()
-                    .stream()
-                    .skip(ThreadLocalRandom.current().nextInt(4))
-                    .findFirst()
-                    .get();
+            int productId = ThreadLocalRandom.current().nextInt(lastProduct - firstProduct + 1) + firstProduct;
+            String languageTag = languageTags.get(ThreadLocalRandom.current().nextInt(languageTags.size()));
             StringBuilder log = new StringBuilder();
             log.append(clientId + " " + threadName + "\n-\tstart of log\t-\n");
             log.append(pm.getDiscounts(languageTag)
@@ -39,28 +74,40 @@ public class Shop {
                     .stream()
                     .map(entry -> entry.getKey() + "\t" + entry.getValue())
                     .collect(Collectors.joining("\n")));
-            Product product = pm.reviewProduct(productId, FOUR_STAR, "Yet another review");
-            log.append((product != null)
-                    ? "\nProduct " + productId + " reviewed\n"
-                    : "\nProduct " + productId + " not reviewed\n");
-            pm.printProductReport(productId, languageTag, clientId);
-            log.append(clientId + " generated report for " + productId + " product");
+            for (int i = 0; i < reviews; i++) {
+                Product product = pm.reviewProduct(productId, FOUR_STAR, "Yet another review");
+                log.append((product != null)
+                        ? "\nProduct " + productId + " reviewed\n"
+                        : "\nProduct " + productId + " not reviewed\n");
+            }
+            for (int i = 0; i < reports; i++) {
+                pm.printProductReport(productId, languageTag, clientId);
+                log.append(clientId + " generated report for " + productId + " product");
+            }
             log.append("\n-\tend of log\t-\n");
+            latencies[clientNumber - 1] = System.nanoTime() - start;
             return log.toString();
         };
 
-        List<Callable<String>> clients = Stream.generate(()->client).limit(20).collect(Collectors.toList());
-        ExecutorService executorService = Executors.newFixedThreadPool(3);
+        List<Callable<String>> clients = Stream.generate(()->client).limit(clientTotal).collect(Collectors.toList());
+        ExecutorService executorService = newExecutor(executorType, threads);
+        String threadType = (executorService instanceof ThreadPoolExecutor) ? "platform" : "virtual";
         try {
+            long start = System.nanoTime();
             List<Future<String>> results = executorService.invokeAll(clients);
+            long elapsed = System.nanoTime() - start;
             executorService.shutdown();
             results.stream().forEach((futureResult)->{
                 try {
-                    System.out.println(futureResult.get());
+                    String log = futureResult.get();
+                    if (printLogs) {
+                        System.out.println(log);
+                    }
                 } catch (InterruptedException | ExecutionException e) {
                     e.printStackTrace();
                 }
             });
+            printSummary(threadType, clientTotal, elapsed, latencies);
         } catch (InterruptedException e) {
             e.printStackTrace();
         }
@@ -70,4 +117,37 @@ public class Shop {
 //        pm.printProducts(filter,ratingSorter.thenComparing(priceSorter));
 //        pm.getDiscounts().forEach((rating,discount)-> System.out.println(rating+ " "+discount));
     }
+
+    /**
+     * Virtual thread executor when asked for and available, looked up
+     * reflectively so the shop still builds and runs on Java 11.
+     */
+    private static ExecutorService newExecutor(String executorType, int threads) {
+        if ("virtual".equals(executorType)) {
+            try {
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException e) {
+                System.out.println("Virtual threads are not available on Java "
+                        + System.getProperty("java.version") + ", using " + threads + " platform threads");
+            }
+        }
+        return Executors.newFixedThreadPool(threads);
+    }
+
+    private static void printSummary(String threadType, int clientTotal, long elapsed, long[] latencies) {
+        long[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        System.out.printf("%s threads: %d clients in %.1f ms, %.1f clients/s, latency ms p50 %.2f p90 %.2f p99 %.2f max %.2f%n",
+                threadType, clientTotal, elapsed / 1e6, clientTotal / (elapsed / 1e9),
+                percentile(sorted, 0.5), percentile(sorted, 0.9), percentile(sorted, 0.99),
+                sorted.length == 0 ? 0 : sorted[sorted.length - 1] / 1e6);
+    }
+
+    private static double percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(fraction * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1e6;
+    }
 }
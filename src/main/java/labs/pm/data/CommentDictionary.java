@@ -0,0 +1,70 @@
+package labs.pm.data;
+
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Review comments stored once per distinct text as UTF-8 bytes, shared by
+ * all products. The text space is split into shards by hash, each a
+ * {@link NameDictionary} under its own lock, so reviews of different
+ * stripes rarely wait for each other. Comments are never removed.
+ */
+class CommentDictionary {
+    static final int NO_COMMENT = -1;
+    private static final int SHARDS = 16;
+    private static final int SHARD_BITS = Integer.numberOfTrailingZeros(SHARDS);
+    private final NameDictionary[] shards = new NameDictionary[SHARDS];
+    private final ReentrantReadWriteLock[] locks = new ReentrantReadWriteLock[SHARDS];
+
+    CommentDictionary() {
+        for (int i = 0; i < SHARDS; i++) {
+            shards[i] = new NameDictionary();
+            locks[i] = new ReentrantReadWriteLock();
+        }
+    }
+
+    /**
+     * @return the id of the comment, {@link #NO_COMMENT} for null
+     */
+    int intern(String comments) {
+        if (comments == null) {
+            return NO_COMMENT;
+        }
+        int shard = comments.hashCode() & (SHARDS - 1);
+        Lock writeLock = locks[shard].writeLock();
+        try {
+            writeLock.lock();
+            return shards[shard].intern(comments) << SHARD_BITS | shard;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    String get(int id) {
+        if (id == NO_COMMENT) {
+            return null;
+        }
+        int shard = id & (SHARDS - 1);
+        Lock readLock = locks[shard].readLock();
+        try {
+            readLock.lock();
+            return shards[shard].get(id >>> SHARD_BITS);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    int size() {
+        int size = 0;
+        for (int i = 0; i < SHARDS; i++) {
+            Lock readLock = locks[i].readLock();
+            try {
+                readLock.lock();
+                size += shards[i].size();
+            } finally {
+                readLock.unlock();
+            }
+        }
+        return size;
+    }
+}
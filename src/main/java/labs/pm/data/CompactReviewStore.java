@@ -0,0 +1,112 @@
+package labs.pm.data;
+
+import java.io.ObjectStreamException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Keeps each review as one int, the comment id of a shared
+ * {@link CommentDictionary} and the rating ordinal:
+ * {@code (comment id + 1) << 3 | rating}. A product's reviews are int
+ * chunks that double in size up to {@link #MAX_CHUNK}, so adding a review
+ * never copies the ones before it. {@link Reviews#toList()} returns views
+ * that decode their comment only when it is read.
+ */
+class CompactReviewStore implements ReviewStore {
+    private static final int FIRST_CHUNK = 4;
+    private static final int MAX_CHUNK = 1024;
+    private static final int RATING_BITS = 3;
+    private static final int MAX_COMMENT_ID = (Integer.MAX_VALUE >>> RATING_BITS) - 1;
+    private static final Rating[] RATINGS = Rating.values();
+    private final CommentDictionary comments = new CommentDictionary();
+
+    @Override
+    public Reviews create(int productId, List<Review> initial) {
+        CompactReviews reviews = new CompactReviews();
+        initial.forEach(reviews::add);
+        return reviews;
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    int getCommentCount() {
+        return comments.size();
+    }
+
+    private int pack(Review review) {
+        int id = comments.intern(review.getComments());
+        if (id > MAX_COMMENT_ID) {
+            throw new IllegalStateException("More than " + MAX_COMMENT_ID + " distinct review comments");
+        }
+        return (id + 1) << RATING_BITS | review.getRating().ordinal();
+    }
+
+    private class CompactReviews implements Reviews {
+        private int[][] chunks = new int[0][];
+        private int lastFill;
+        private int size;
+
+        @Override
+        public void add(Review review) {
+            int packed = pack(review);
+            if (chunks.length == 0 || lastFill == chunks[chunks.length - 1].length) {
+                int[][] grown = Arrays.copyOf(chunks, chunks.length + 1);
+                grown[chunks.length] = new int[Math.min(FIRST_CHUNK << Math.min(chunks.length, 16), MAX_CHUNK)];
+                chunks = grown;
+                lastFill = 0;
+            }
+            chunks[chunks.length - 1][lastFill++] = packed;
+            size++;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public List<Review> toList() {
+            List<Review> result = new ArrayList<>(size);
+            int remaining = size;
+            for (int[] chunk : chunks) {
+                for (int i = 0; i < chunk.length && remaining > 0; i++, remaining--) {
+                    result.add(new CompactReview(comments, chunk[i]));
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Review backed by a packed value. The comment string is decoded when
+     * it is first read, once per view, serialization writes a plain
+     * {@link Review}.
+     */
+    private static class CompactReview extends Review {
+        private static final long serialVersionUID = 1L;
+        private final transient CommentDictionary comments;
+        private final transient int packed;
+        private transient String decoded;
+
+        CompactReview(CommentDictionary comments, int packed) {
+            super(RATINGS[packed & ((1 << RATING_BITS) - 1)], null);
+            this.comments = comments;
+            this.packed = packed;
+        }
+
+        @Override
+        public String getComments() {
+            if (decoded == null) {
+                decoded = comments.get((packed >>> RATING_BITS) - 1);
+            }
+            return decoded;
+        }
+
+        private Object writeReplace() throws ObjectStreamException {
+            return new Review(getRating(), getComments());
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package labs.pm.data;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Loads product files of a data folder on a bounded pool of worker threads.
+ * The folder is listed lazily and the listing thread runs a task itself
+ * when the work queue is full, so memory does not grow with the folder size.
+ */
+class DataLoader {
+    private static final int QUEUE_PER_THREAD = 64;
+    private static final long PROGRESS_INTERVAL = 10_000;
+    private final int threads;
+    private final Logger logger;
+
+    DataLoader(int threads, Logger logger) {
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.logger = logger;
+    }
+
+    void load(Path folder, String glob, Predicate<Path> filter, Function<Path, ProductRecord> reader,
+              Consumer<ProductRecord> sink, LoadProgress progress) {
+        ThreadPoolExecutor workers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(threads * QUEUE_PER_THREAD),
+                task -> {
+                    Thread thread = new Thread(task, "product-loader");
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(folder, glob)) {
+            for (Path file : files) {
+                if (!filter.test(file)) {
+                    continue;
+                }
+                workers.execute(() -> loadFile(file, reader, sink, progress));
+            }
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Error load  " + e.getMessage());
+        } finally {
+            workers.shutdown();
+            try {
+                workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                workers.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+            progress.finish();
+            logger.log(Level.INFO, "Loaded " + progress);
+        }
+    }
+
+    private void loadFile(Path file, Function<Path, ProductRecord> reader,
+                          Consumer<ProductRecord> sink, LoadProgress progress) {
+        ProductRecord record;
+        try {
+            record = reader.apply(file);
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, "Error load product " + file + " " + e.getMessage());
+            record = null;
+        }
+        if (record == null) {
+            progress.fileFailed();
+            return;
+        }
+        sink.accept(record);
+        progress.fileLoaded(1 + record.getReviewCount());
+        if (progress.getFiles() % PROGRESS_INTERVAL == 0) {
+            logger.log(Level.INFO, "Loading " + progress);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package labs.pm.data;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Discount totals per rating, kept up to date as products are added and
+ * re-rated, so getDiscounts does not scan the catalog. Drink discounts are
+ * summed apart because they only count in happy hour, food discounts are
+ * summed per best before date because they only count on that day.
+ * Totals are kept in minor units, see {@link Money}, in LongAdders, so
+ * writers of different stripes never wait for each other here. A reader
+ * may see a concurrent re-rate in the new rating before it left the old one.
+ * Formatted results are cached per language until the totals change or
+ * the day or the happy hour window changes. Food totals of past dates are
+ * never read again, they are dropped when the totals of a later day are
+ * first read, and products dated before that day are not summed by date.
+ */
+class DiscountAggregate implements ProductStore.Listener {
+    private static final Rating[] RATINGS = Rating.values();
+    private final LongAdder[] counts = newAdders();
+    private final LongAdder[] drinks = newAdders();
+    private final LongAdder[] other = newAdders();
+    private final Map<LocalDate, LongAdder[]> foodByDate = new ConcurrentHashMap<>();
+    private volatile LocalDate pruned = LocalDate.MIN;
+    private final Map<String, Formatted> formatted = new ConcurrentHashMap<>();
+    // only grows, it changes after every change of the totals
+    private final LongAdder version = new LongAdder();
+
+    private static class Formatted {
+        private final long version;
+        private final LocalDate date;
+        private final boolean happyHour;
+        private final Map<String, String> discounts;
+
+        Formatted(long version, LocalDate date, boolean happyHour, Map<String, String> discounts) {
+            this.version = version;
+            this.date = date;
+            this.happyHour = happyHour;
+            this.discounts = discounts;
+        }
+    }
+
+    private static LongAdder[] newAdders() {
+        LongAdder[] adders = new LongAdder[RATINGS.length];
+        for (int i = 0; i < adders.length; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    @Override
+    public void added(Product product) {
+        update(product, 1);
+    }
+
+    @Override
+    public void replaced(Product previous, Product current) {
+        if (previous.getRating() != current.getRating()) {
+            update(previous, -1);
+            update(current, 1);
+        }
+    }
+
+    @Override
+    public void removed(Product product) {
+        update(product, -1);
+    }
+
+    /**
+     * Called while every stripe is write locked, so no update runs at the same time.
+     */
+    @Override
+    public void cleared() {
+        for (int i = 0; i < RATINGS.length; i++) {
+            counts[i].reset();
+            drinks[i].reset();
+            other[i].reset();
+        }
+        foodByDate.clear();
+        version.increment();
+    }
+
+    private void update(Product product, int sign) {
+        int rating = product.getRating().ordinal();
+        long discount = sign * product.getBaseDiscountMinor();
+        counts[rating].add(sign);
+        if (product instanceof Drink) {
+            drinks[rating].add(discount);
+        } else if (product instanceof Food) {
+            if (!product.getBestBefore().isBefore(pruned)) {
+                foodByDate.computeIfAbsent(product.getBestBefore(), date -> newAdders())[rating].add(discount);
+            }
+        } else {
+            other[rating].add(discount);
+        }
+        version.increment();
+    }
+
+    /**
+     * @return exact discount total by rating, for ratings that have products
+     */
+    Map<Rating, BigDecimal> getTotals(LocalDate today, boolean happyHour) {
+        if (today.isAfter(pruned)) {
+            pruned = today;
+            foodByDate.keySet().removeIf(date -> date.isBefore(today));
+        }
+        Map<Rating, BigDecimal> totals = new LinkedHashMap<>();
+        LongAdder[] food = foodByDate.get(today);
+        for (int i = 0; i < RATINGS.length; i++) {
+            if (counts[i].sum() > 0) {
+                long total = other[i].sum();
+                if (happyHour) {
+                    total = Math.addExact(total, drinks[i].sum());
+                }
+                if (food != null) {
+                    total = Math.addExact(total, food[i].sum());
+                }
+                totals.put(RATINGS[i], Money.toDecimal(total));
+            }
+        }
+        return totals;
+    }
+
+    int getDateCount() {
+        return foodByDate.size();
+    }
+
+    Map<String, String> getDiscounts(String languageTag, Function<BigDecimal, String> moneyFormat) {
+        LocalDate today = LocalDate.now();
+        boolean happyHour = Drink.isHappyHour(LocalTime.now());
+        long current = version.sum();
+        Formatted cached = formatted.get(languageTag);
+        if (cached != null && cached.version == current && cached.happyHour == happyHour && cached.date.equals(today)) {
+            return cached.discounts;
+        }
+        Map<String, String> discounts = new HashMap<>();
+        getTotals(today, happyHour).forEach((rating, total) -> discounts.put(rating.getStars(), moneyFormat.apply(total)));
+        Map<String, String> result = Collections.unmodifiableMap(discounts);
+        formatted.put(languageTag, new Formatted(current, today, happyHour, result));
+        return result;
+    }
+}
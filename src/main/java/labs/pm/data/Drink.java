@@ -13,10 +13,15 @@ public class Drink extends Product{
         return new Drink(getId(),getName(),getPrice(),rating);
     }
 
+    static final LocalTime HAPPY_HOUR_START = LocalTime.of(17, 30);
+    static final LocalTime HAPPY_HOUR_END = LocalTime.of(18, 30);
+
     @Override
     public BigDecimal getDiscount() {
-        LocalTime now = LocalTime.now();
-        return (now.isAfter(LocalTime.of(17,30)) && now.isBefore(LocalTime.of(18,30)))
-                ? super.getDiscount() : BigDecimal.ZERO;
+        return isHappyHour(LocalTime.now()) ? getBaseDiscount() : BigDecimal.ZERO;
+    }
+
+    static boolean isHappyHour(LocalTime time) {
+        return time.isAfter(HAPPY_HOUR_START) && time.isBefore(HAPPY_HOUR_END);
     }
 }
@@ -17,7 +17,11 @@ public class Food extends Product{
 
     @Override
     public BigDecimal getDiscount() {
-        return (bestBefore.isEqual(LocalDate.now())) ? super.getDiscount() : BigDecimal.ZERO;
+        return isDiscounted(LocalDate.now()) ? getBaseDiscount() : BigDecimal.ZERO;
+    }
+
+    boolean isDiscounted(LocalDate today) {
+        return bestBefore.isEqual(today);
     }
 
     @Override
@@ -0,0 +1,348 @@
+package labs.pm.data;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of product mutations, written to {@code journal.<generation>}
+ * files. Writers {@link #append(ByteBuffer)} a record while they hold the
+ * product's stripe lock, which only queues it, and {@link #sync(long)} after
+ * releasing it, so no file I/O happens under a stripe lock or a monitor.
+ * In {@link SyncMode#GROUP} mode one waiting writer forces everything
+ * appended so far with a single fsync, the others find their record already
+ * durable. A batch that fails to reach the file is cut off the file again
+ * and put back in front of the pending records, so the next sync retries
+ * it. If the file cannot be cut back the journal fails for good and every
+ * later append and sync throws. A snapshot named {@code snapshot.<generation>}
+ * holds every mutation of older journal generations.
+ * <pre>
+ * record  int payload length, int CRC32 of payload, payload
+ * payload byte kind, int id, then for products: rating byte, price, name and
+ *         for food the best before epoch day; for reviews: rating byte, comment
+ * </pre>
+ */
+class Journal implements Closeable {
+    private static final byte FOOD_CREATED = 1;
+    private static final byte DRINK_CREATED = 2;
+    private static final byte PRODUCT_REVIEWED = 3;
+    private static final String JOURNAL_PREFIX = "journal.";
+    private static final String SNAPSHOT_PREFIX = "snapshot.";
+
+    enum SyncMode {
+        /** fsync every record on its own */
+        ALWAYS,
+        /** one fsync for all records appended while the previous one ran */
+        GROUP,
+        /** write without fsync, the OS decides when data reaches the disk */
+        NONE
+    }
+
+    interface Replay {
+        void created(Product product);
+
+        void reviewed(int id, Rating rating, String comments);
+    }
+
+    private final Path folder;
+    private final SyncMode mode;
+    private final ReentrantLock syncLock = new ReentrantLock();
+    private FileChannel channel;
+    private long generation;
+    private List<ByteBuffer> pending = new ArrayList<>();
+    private long appended;
+    private volatile long durable;
+    private volatile IOException failure;
+
+    Journal(Path folder, SyncMode mode, long generation) throws IOException {
+        this.folder = folder;
+        this.mode = mode;
+        this.generation = generation;
+        this.channel = open(generation);
+    }
+
+    private FileChannel open(long generation) throws IOException {
+        return FileChannel.open(folder.resolve(JOURNAL_PREFIX + generation),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Queues the records, all or none of them.
+     *
+     * @return sequence of the last record
+     */
+    long append(ByteBuffer... records) throws IOException {
+        checkFailure();
+        synchronized (this) {
+            pending.addAll(Arrays.asList(records));
+            appended += records.length;
+            return appended;
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        if (failure != null) {
+            throw new IOException("Journal failed " + failure.getMessage(), failure);
+        }
+    }
+
+    void sync(long sequence) throws IOException {
+        if (durable >= sequence) {
+            return;
+        }
+        try {
+            syncLock.lock();
+            if (durable >= sequence) {
+                return;
+            }
+            checkFailure();
+            long size = channel.size();
+            List<ByteBuffer> batch;
+            long upTo;
+            synchronized (this) {
+                batch = pending;
+                upTo = appended;
+                pending = new ArrayList<>();
+            }
+            try {
+                if (mode == SyncMode.ALWAYS) {
+                    for (ByteBuffer record : batch) {
+                        write(List.of(record));
+                        channel.force(false);
+                    }
+                } else {
+                    write(batch);
+                    if (mode == SyncMode.GROUP) {
+                        channel.force(false);
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                restore(batch, size, e);
+                throw e;
+            }
+            durable = upTo;
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    /**
+     * Cuts a failed batch off the file and queues it again in front of the
+     * records appended since.
+     */
+    private void restore(List<ByteBuffer> batch, long size, Exception cause) {
+        batch.forEach(ByteBuffer::rewind);
+        synchronized (this) {
+            batch.addAll(pending);
+            pending = batch;
+        }
+        try {
+            channel.truncate(size);
+            channel.force(false);
+        } catch (IOException | RuntimeException e) {
+            cause.addSuppressed(e);
+            failure = (cause instanceof IOException) ? (IOException) cause : new IOException(cause);
+        }
+    }
+
+    private synchronized long lastAppended() {
+        return appended;
+    }
+
+    private void write(List<ByteBuffer> records) throws IOException {
+        ByteBuffer[] buffers = records.toArray(new ByteBuffer[0]);
+        long remaining = records.stream().mapToLong(ByteBuffer::remaining).sum();
+        while (remaining > 0) {
+            remaining -= channel.write(buffers);
+        }
+    }
+
+    /**
+     * Makes everything appended so far durable and starts the next
+     * generation. The caller must stop appends while this runs.
+     *
+     * @return the new generation, a snapshot of the current state belongs to it
+     */
+    long rotate() throws IOException {
+        try {
+            syncLock.lock();
+            sync(lastAppended());
+            channel.force(false);
+            channel.close();
+            channel = open(++generation);
+            return generation;
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            syncLock.lock();
+            try {
+                sync(lastAppended());
+            } finally {
+                channel.close();
+            }
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    static Path snapshotFile(Path folder, long generation) {
+        return folder.resolve(SNAPSHOT_PREFIX + generation);
+    }
+
+    /**
+     * @return journal (or snapshot) files of the folder by generation
+     */
+    static TreeMap<Long, Path> list(Path folder, boolean snapshots) throws IOException {
+        String prefix = snapshots ? SNAPSHOT_PREFIX : JOURNAL_PREFIX;
+        TreeMap<Long, Path> files = new TreeMap<>();
+        try (Stream<Path> paths = Files.list(folder)) {
+            paths.forEach(path -> {
+                String name = path.getFileName().toString();
+                if (name.startsWith(prefix)) {
+                    try {
+                        files.put(Long.parseLong(name.substring(prefix.length())), path);
+                    } catch (NumberFormatException e) {
+                        // not ours, e.g. a snapshot still being written
+                    }
+                }
+            });
+        }
+        return files;
+    }
+
+    static ByteBuffer productCreated(Product product) {
+        byte[] name = bytes(product.getName());
+        byte[] price = bytes(product.getPrice().toString());
+        boolean food = product instanceof Food;
+        ByteBuffer payload = ByteBuffer.allocate(1 + 4 + 1 + 4 + price.length + 4 + name.length + (food ? 8 : 0));
+        payload.put(food ? FOOD_CREATED : DRINK_CREATED)
+                .putInt(product.getId())
+                .put((byte) product.getRating().ordinal())
+                .putInt(price.length).put(price)
+                .putInt(name.length).put(name);
+        if (food) {
+            payload.putLong(product.getBestBefore().toEpochDay());
+        }
+        return frame(payload);
+    }
+
+    static ByteBuffer productReviewed(int id, Rating rating, String comments) {
+        byte[] text = (comments == null) ? null : bytes(comments);
+        ByteBuffer payload = ByteBuffer.allocate(1 + 4 + 1 + 4 + (text == null ? 0 : text.length));
+        payload.put(PRODUCT_REVIEWED).putInt(id).put((byte) rating.ordinal());
+        if (text == null) {
+            payload.putInt(-1);
+        } else {
+            payload.putInt(text.length).put(text);
+        }
+        return frame(payload);
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static ByteBuffer frame(ByteBuffer payload) {
+        payload.flip();
+        CRC32 crc = new CRC32();
+        crc.update(payload.duplicate());
+        ByteBuffer record = ByteBuffer.allocate(8 + payload.remaining());
+        record.putInt(payload.remaining()).putInt((int) crc.getValue()).put(payload);
+        return record.flip();
+    }
+
+    /**
+     * Replays a journal file. A torn record at the end, left by a crash in
+     * the middle of a write, ends the replay and is cut off the file: one
+     * whose length runs past the end of the file, or whose checksum fails
+     * and which ends with the file. A bad record followed by more data is
+     * corruption, the file is left as it is.
+     *
+     * @return number of records replayed
+     * @throws ProductManagerException when a record before the end is corrupt
+     */
+    static long replay(Path file, Replay replay) throws IOException, ProductManagerException {
+        long count = 0;
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer data = ByteBuffer.allocate((int) Math.min(in.size(), Integer.MAX_VALUE));
+            while (data.hasRemaining()) {
+                if (in.read(data) < 0) {
+                    break;
+                }
+            }
+            data.flip();
+            Rating[] ratings = Rating.values();
+            while (data.remaining() >= 8) {
+                int start = data.position();
+                int length = data.getInt();
+                int checksum = data.getInt();
+                if (length < 0) {
+                    throw corrupt(file, start);
+                }
+                if (length > data.remaining()) {
+                    data.position(start);
+                    break;
+                }
+                ByteBuffer payload = data.slice();
+                payload.limit(length);
+                CRC32 crc = new CRC32();
+                crc.update(payload.duplicate());
+                if ((int) crc.getValue() != checksum) {
+                    if (data.position() + length < data.limit()) {
+                        throw corrupt(file, start);
+                    }
+                    data.position(start);
+                    break;
+                }
+                data.position(data.position() + length);
+                byte kind = payload.get();
+                int id = payload.getInt();
+                Rating rating = ratings[payload.get()];
+                if (kind == PRODUCT_REVIEWED) {
+                    int textLength = payload.getInt();
+                    replay.reviewed(id, rating, textLength < 0 ? null : string(payload, textLength));
+                } else {
+                    BigDecimal price = new BigDecimal(string(payload, payload.getInt()));
+                    String name = string(payload, payload.getInt());
+                    replay.created(kind == FOOD_CREATED
+                            ? new Food(id, name, price, rating, LocalDate.ofEpochDay(payload.getLong()))
+                            : new Drink(id, name, price, rating));
+                }
+                count++;
+            }
+            if (data.hasRemaining()) {
+                in.truncate(data.position());
+            }
+        }
+        return count;
+    }
+
+    private static ProductManagerException corrupt(Path file, int offset) {
+        return new ProductManagerException("Corrupt journal record in " + file + " at " + offset);
+    }
+
+    private static String string(ByteBuffer buffer, int length) {
+        String text = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return text;
+    }
+}
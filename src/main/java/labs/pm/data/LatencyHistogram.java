@@ -0,0 +1,95 @@
+package labs.pm.data;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock free histogram of nanosecond durations with log-linear buckets:
+ * every power of two is split into {@code 2^SUB_BITS} buckets, so a
+ * recorded value is off by at most 1/16 (6.25%) in any percentile.
+ * Every call is counted, durations are only recorded for calls that were
+ * timed, see {@link Metrics#now()}.
+ */
+class LatencyHistogram {
+    static final long NOT_TIMED = Long.MIN_VALUE;
+    private static final int SUB_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private final AtomicLongArray counts = new AtomicLongArray((64 - SUB_BITS + 1) * SUB_BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+    private final boolean enabled;
+
+    LatencyHistogram(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    void recordSince(long start) {
+        if (enabled) {
+            count.increment();
+            if (start != NOT_TIMED) {
+                recordTime(System.nanoTime() - start);
+            }
+        }
+    }
+
+    void record(long nanos) {
+        if (enabled) {
+            count.increment();
+            recordTime(nanos);
+        }
+    }
+
+    private void recordTime(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(index(value));
+        total.add(value);
+        max.accumulate(value);
+    }
+
+    private static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    private static long highestValue(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long lowest = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    LatencySnapshot snapshot() {
+        long[] copy = new long[counts.length()];
+        long recorded = 0;
+        for (int i = 0; i < copy.length; i++) {
+            copy[i] = counts.get(i);
+            recorded += copy[i];
+        }
+        long maximum = max.get();
+        return new LatencySnapshot(count.sum(), recorded == 0 ? 0 : (double) total.sum() / recorded,
+                percentile(copy, recorded, 0.5, maximum),
+                percentile(copy, recorded, 0.9, maximum),
+                percentile(copy, recorded, 0.99, maximum),
+                maximum);
+    }
+
+    private static long percentile(long[] counts, long recorded, double fraction, long maximum) {
+        long rank = (long) Math.ceil(fraction * recorded);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank && seen > 0) {
+                return Math.min(highestValue(i), maximum);
+            }
+        }
+        return 0;
+    }
+}
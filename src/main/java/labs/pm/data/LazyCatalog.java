@@ -0,0 +1,236 @@
+package labs.pm.data;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.text.MessageFormat;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
+/**
+ * Bookkeeping of a catalog whose products are loaded on first access.
+ * Knows which ids have data files, from one listing of the data folder,
+ * and keeps at most {@code capacity} products resident, evicted with the
+ * CLOCK approximation of LRU: every access sets the reference bit of the
+ * product's slot, the hand clears set bits and evicts the first product
+ * whose bit is already clear. Evicted products that changed are written
+ * back to their data files first, the product line replaced, new reviews
+ * appended. A product whose write back fails stays resident in a slot
+ * added for it, the working set grows rather than drop its changes.
+ */
+class LazyCatalog {
+    static final int NO_VICTIM = Integer.MIN_VALUE;
+    private final Path dataFolder;
+    private final String productFile;
+    private final String reviewsFile;
+    private final RowFormat productFormat;
+    private final RowFormat reviewFormat;
+    private final ReentrantReadWriteLock indexLock = new ReentrantReadWriteLock();
+    private final IntMap<Boolean> known = new IntMap<>();
+    private final ReentrantLock clockLock = new ReentrantLock();
+    private int[] ids;
+    private volatile AtomicIntegerArray referenced;
+    private int size;
+    private int hand;
+
+    LazyCatalog(Path dataFolder, String productFile, String reviewsFile,
+                RowFormat productFormat, RowFormat reviewFormat, int capacity) {
+        this.dataFolder = dataFolder;
+        this.productFile = productFile;
+        this.reviewsFile = reviewsFile;
+        this.productFormat = productFormat;
+        this.reviewFormat = reviewFormat;
+        this.ids = new int[Math.max(1, capacity)];
+        this.referenced = new AtomicIntegerArray(ids.length);
+    }
+
+    /**
+     * Lists the data folder and forgets resident products.
+     *
+     * @return product files not named after an id, which cannot be found by id
+     */
+    List<Path> index(String glob, Predicate<Path> filter) throws IOException {
+        List<Path> unnamed = new ArrayList<>();
+        MessageFormat names = new MessageFormat(productFile);
+        Lock writeLock = indexLock.writeLock();
+        try {
+            writeLock.lock();
+            known.clear();
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(dataFolder, glob)) {
+                for (Path file : files) {
+                    if (!filter.test(file)) {
+                        continue;
+                    }
+                    try {
+                        known.put(Integer.parseInt(names.parse(file.getFileName().toString())[0].toString()), Boolean.TRUE);
+                    } catch (ParseException | NumberFormatException e) {
+                        unnamed.add(file);
+                    }
+                }
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        try {
+            clockLock.lock();
+            size = 0;
+            hand = 0;
+        } finally {
+            clockLock.unlock();
+        }
+        return unnamed;
+    }
+
+    int getKnownCount() {
+        Lock readLock = indexLock.readLock();
+        try {
+            readLock.lock();
+            return known.size();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    boolean isKnown(int id) {
+        Lock readLock = indexLock.readLock();
+        try {
+            readLock.lock();
+            return known.containsKey(id);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    void created(int id) {
+        Lock writeLock = indexLock.writeLock();
+        try {
+            writeLock.lock();
+            known.put(id, Boolean.TRUE);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    Path productFile(int id) {
+        return dataFolder.resolve(MessageFormat.format(productFile, Integer.toString(id)));
+    }
+
+    void touch(ProductRecord record) {
+        int slot = record.getSlot();
+        AtomicIntegerArray bits = referenced;
+        if (slot >= 0 && slot < bits.length() && bits.get(slot) == 0) {
+            bits.set(slot, 1);
+        }
+    }
+
+    /**
+     * Gives the record a slot, taken from the product the hand evicts when
+     * all slots are in use. The caller must evict that product.
+     *
+     * @return id of the product to evict, or {@link #NO_VICTIM}
+     */
+    int admit(ProductRecord record, int id) {
+        try {
+            clockLock.lock();
+            if (size < ids.length) {
+                ids[size] = id;
+                referenced.set(size, 1);
+                record.setSlot(size++);
+                return NO_VICTIM;
+            }
+            while (true) {
+                int slot = hand;
+                hand = (hand + 1) % ids.length;
+                if (referenced.get(slot) != 0) {
+                    referenced.set(slot, 0);
+                } else {
+                    int victim = ids[slot];
+                    ids[slot] = id;
+                    referenced.set(slot, 1);
+                    record.setSlot(slot);
+                    return victim;
+                }
+            }
+        } finally {
+            clockLock.unlock();
+        }
+    }
+
+    /**
+     * Gives a product that {@link #admit} chose as victim, but that could
+     * not be written back, a new slot of its own.
+     */
+    void readmit(ProductRecord record, int id) {
+        try {
+            clockLock.lock();
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size + 1);
+                AtomicIntegerArray grown = new AtomicIntegerArray(size + 1);
+                for (int i = 0; i < size; i++) {
+                    grown.set(i, referenced.get(i));
+                }
+                referenced = grown;
+            }
+            ids[size] = id;
+            referenced.set(size, 1);
+            record.setSlot(size++);
+        } finally {
+            clockLock.unlock();
+        }
+    }
+
+    /**
+     * @return ids of the resident products
+     */
+    int[] resident() {
+        try {
+            clockLock.lock();
+            return Arrays.copyOf(ids, size);
+        } finally {
+            clockLock.unlock();
+        }
+    }
+
+    /**
+     * Writes the changes of a product to its data files, the caller holds
+     * the product's stripe write lock.
+     */
+    void writeBack(ProductRecord record) throws IOException {
+        Product product = record.getProduct();
+        if (record.isProductChanged()) {
+            StringBuilder line = new StringBuilder();
+            productFormat.format(line, product instanceof Food ? 'F' : 'D', product.getId(), product.getName(),
+                    product.getPrice().toPlainString(), product.getRating().ordinal(), product.getBestBefore());
+            Path file = productFile(product.getId());
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.writeString(temp, line.append(System.lineSeparator()), StandardCharsets.UTF_8);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        List<Review> added = record.copyNewReviews();
+        if (!added.isEmpty()) {
+            Path file = dataFolder.resolve(MessageFormat.format(reviewsFile, Integer.toString(product.getId())));
+            try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                StringBuilder line = new StringBuilder();
+                for (Review review : added) {
+                    line.setLength(0);
+                    reviewFormat.format(line, review.getRating().ordinal(), review.getComments());
+                    out.append(line).append(System.lineSeparator());
+                }
+            }
+        }
+        record.persisted();
+    }
+}
@@ -0,0 +1,67 @@
+package labs.pm.data;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of a running or finished data folder load.
+ */
+public class LoadProgress {
+    private final long started = System.nanoTime();
+    private final AtomicLong files = new AtomicLong();
+    private final AtomicLong rows = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private volatile long finished;
+
+    void fileLoaded(long rowCount) {
+        files.incrementAndGet();
+        rows.addAndGet(rowCount);
+    }
+
+    void fileFailed() {
+        errors.incrementAndGet();
+    }
+
+    void finish() {
+        finished = System.nanoTime();
+    }
+
+    public boolean isDone() {
+        return finished != 0;
+    }
+
+    public long getFiles() {
+        return files.get();
+    }
+
+    public long getRows() {
+        return rows.get();
+    }
+
+    public long getErrors() {
+        return errors.get();
+    }
+
+    public Duration getElapsed() {
+        return Duration.ofNanos((isDone() ? finished : System.nanoTime()) - started);
+    }
+
+    public double getFilesPerSecond() {
+        return perSecond(getFiles());
+    }
+
+    public double getRowsPerSecond() {
+        return perSecond(getRows());
+    }
+
+    private double perSecond(long count) {
+        long nanos = getElapsed().toNanos();
+        return nanos == 0 ? 0 : count * 1_000_000_000.0 / nanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d files, %d rows, %d errors in %d ms (%.0f files/s, %.0f rows/s)",
+                getFiles(), getRows(), getErrors(), getElapsed().toMillis(), getFilesPerSecond(), getRowsPerSecond());
+    }
+}
@@ -0,0 +1,279 @@
+package labs.pm.data;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps reviews in a memory mapped file, so review history does not live
+ * on the heap. New reviews of a product are buffered on the heap and
+ * appended to the file as one chunk when the buffer is full or on
+ * {@link #flush()}. Each product keeps the file offsets of its chunks and
+ * reads them back only when its reviews are asked for.
+ * <pre>
+ * chunk  int review count, then per review: rating byte, int comment byte
+ *        length (-1 for null) and the UTF-8 comment bytes
+ * </pre>
+ * The file grows in mapped segments and a chunk never crosses a segment
+ * boundary. Segments are mapped one ahead on the mapper thread, when the
+ * first chunk goes into the last mapped one, so writers holding a stripe
+ * lock only copy bytes into mapped memory. The file is scratch space, it
+ * is truncated when the store opens.
+ */
+class MappedReviewStore implements ReviewStore {
+    private static final int SEGMENT_SIZE = 64 << 20;
+    private final FileChannel channel;
+    private final int bufferSize;
+    private final Set<MappedReviews> dirty = ConcurrentHashMap.newKeySet();
+    private final ReentrantLock reserveLock = new ReentrantLock();
+    private final ExecutorService mapper = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "review-store-mapper");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile CompletableFuture<MappedByteBuffer>[] segments;
+    private long position;
+
+    MappedReviewStore(Path file, int bufferSize) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.bufferSize = bufferSize;
+        this.segments = newSegments(1);
+        segments[0] = CompletableFuture.completedFuture(map(0));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static CompletableFuture<MappedByteBuffer>[] newSegments(int length) {
+        return (CompletableFuture<MappedByteBuffer>[]) new CompletableFuture<?>[length];
+    }
+
+    private MappedByteBuffer map(int segment) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_WRITE, (long) segment * SEGMENT_SIZE, SEGMENT_SIZE);
+    }
+
+    @Override
+    public Reviews create(int productId, List<Review> initial) {
+        MappedReviews reviews = new MappedReviews();
+        if (!initial.isEmpty()) {
+            reviews.append(initial);
+        }
+        return reviews;
+    }
+
+    @Override
+    public void flush() {
+        dirty.forEach(MappedReviews::flushBuffer);
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        mapper.shutdown();
+        channel.close();
+    }
+
+    private void write(List<Review> reviews, LongList offsets) {
+        ByteBuffer chunk = encode(reviews);
+        if (chunk.remaining() > SEGMENT_SIZE) {
+            if (reviews.size() == 1) {
+                throw new UncheckedIOException(new IOException("Review larger than " + SEGMENT_SIZE + " bytes"));
+            }
+            write(reviews.subList(0, reviews.size() / 2), offsets);
+            write(reviews.subList(reviews.size() / 2, reviews.size()), offsets);
+            return;
+        }
+        long offset = reserve(chunk.remaining());
+        ByteBuffer segment = segment(offset).duplicate();
+        segment.position((int) (offset % SEGMENT_SIZE));
+        segment.put(chunk);
+        offsets.add(offset);
+    }
+
+    /**
+     * Only moves the end of the file, the mapping of the next segment is
+     * handed to the mapper thread.
+     */
+    private long reserve(int length) {
+        try {
+            reserveLock.lock();
+            if (position % SEGMENT_SIZE + length > SEGMENT_SIZE) {
+                position = (position / SEGMENT_SIZE + 1) * SEGMENT_SIZE;
+            }
+            long offset = position;
+            int segment = (int) (offset / SEGMENT_SIZE);
+            if (segment + 1 >= segments.length) {
+                CompletableFuture<MappedByteBuffer>[] grown = Arrays.copyOf(segments, segment + 2);
+                for (int i = segments.length; i < grown.length; i++) {
+                    int next = i;
+                    grown[i] = CompletableFuture.supplyAsync(() -> {
+                        try {
+                            return map(next);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }, mapper);
+                }
+                segments = grown;
+            }
+            position += length;
+            return offset;
+        } finally {
+            reserveLock.unlock();
+        }
+    }
+
+    /**
+     * @return the mapped segment holding the offset, waits only when writers
+     * filled the previous segment before the mapper thread mapped this one
+     */
+    private ByteBuffer segment(long offset) {
+        try {
+            return segments[(int) (offset / SEGMENT_SIZE)].join();
+        } catch (CompletionException e) {
+            throw (e.getCause() instanceof UncheckedIOException)
+                    ? (UncheckedIOException) e.getCause()
+                    : new UncheckedIOException(new IOException(e.getCause()));
+        }
+    }
+
+    private static ByteBuffer encode(List<Review> reviews) {
+        byte[][] comments = new byte[reviews.size()][];
+        int length = 4;
+        for (int i = 0; i < comments.length; i++) {
+            String text = reviews.get(i).getComments();
+            comments[i] = (text == null) ? null : text.getBytes(StandardCharsets.UTF_8);
+            length += 1 + 4 + (text == null ? 0 : comments[i].length);
+        }
+        ByteBuffer chunk = ByteBuffer.allocate(length);
+        chunk.putInt(reviews.size());
+        for (int i = 0; i < comments.length; i++) {
+            chunk.put((byte) reviews.get(i).getRating().ordinal());
+            if (comments[i] == null) {
+                chunk.putInt(-1);
+            } else {
+                chunk.putInt(comments[i].length).put(comments[i]);
+            }
+        }
+        return chunk.flip();
+    }
+
+    private void read(long offset, List<Review> result) {
+        ByteBuffer chunk = segment(offset).duplicate();
+        chunk.position((int) (offset % SEGMENT_SIZE));
+        Rating[] ratings = Rating.values();
+        int count = chunk.getInt();
+        for (int i = 0; i < count; i++) {
+            Rating rating = ratings[chunk.get()];
+            int length = chunk.getInt();
+            String comments = null;
+            if (length >= 0) {
+                byte[] bytes = new byte[length];
+                chunk.get(bytes);
+                comments = new String(bytes, StandardCharsets.UTF_8);
+            }
+            result.add(new Review(rating, comments));
+        }
+    }
+
+    private static class LongList {
+        private long[] values = new long[1];
+        private int size;
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+
+    /**
+     * Guarded by the product's stripe lock and by its own lock, since
+     * {@link #flush()} comes from threads holding no stripe lock.
+     */
+    private class MappedReviews implements Reviews {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final LongList chunks = new LongList();
+        private List<Review> buffer = new ArrayList<>();
+        private int size;
+
+        @Override
+        public void add(Review review) {
+            try {
+                lock.lock();
+                buffer.add(review);
+                size++;
+                if (buffer.size() >= bufferSize) {
+                    flushBuffer();
+                } else {
+                    dirty.add(this);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void append(List<Review> reviews) {
+            try {
+                lock.lock();
+                write(reviews, chunks);
+                size += reviews.size();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void flushBuffer() {
+            try {
+                lock.lock();
+                if (!buffer.isEmpty()) {
+                    write(buffer, chunks);
+                    buffer = new ArrayList<>();
+                }
+                dirty.remove(this);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public int size() {
+            try {
+                lock.lock();
+                return size;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public List<Review> toList() {
+            try {
+                lock.lock();
+                List<Review> result = new ArrayList<>(size);
+                for (int i = 0; i < chunks.size; i++) {
+                    read(chunks.values[i], result);
+                }
+                result.addAll(buffer);
+                return result;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
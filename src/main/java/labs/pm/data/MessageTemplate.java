@@ -0,0 +1,69 @@
+package labs.pm.data;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A MessageFormat pattern with plain {@code {n}} placeholders, parsed once.
+ * Literal text follows the MessageFormat quoting rules. Arguments are
+ * written by the caller straight into the output, so formatting creates
+ * no argument arrays or intermediate strings. Immutable and thread safe.
+ */
+class MessageTemplate {
+    private final String[] literals;
+    private final int[] arguments;
+
+    interface Arguments {
+        void append(int argument, Appendable out) throws IOException;
+    }
+
+    private MessageTemplate(String[] literals, int[] arguments) {
+        this.literals = literals;
+        this.arguments = arguments;
+    }
+
+    static MessageTemplate compile(String pattern) {
+        List<String> literals = new ArrayList<>();
+        List<Integer> arguments = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '\'') {
+                if (i + 1 < pattern.length() && pattern.charAt(i + 1) == '\'') {
+                    literal.append(c);
+                    i++;
+                } else {
+                    quoted = !quoted;
+                }
+            } else if (c == '{' && !quoted) {
+                int close = pattern.indexOf('}', i);
+                if (close < 0) {
+                    throw new IllegalArgumentException("Unmatched braces in " + pattern);
+                }
+                try {
+                    arguments.add(Integer.parseInt(pattern.substring(i + 1, close)));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Unsupported argument in " + pattern);
+                }
+                literals.add(literal.toString());
+                literal.setLength(0);
+                i = close;
+            } else {
+                literal.append(c);
+            }
+        }
+        literals.add(literal.toString());
+        return new MessageTemplate(literals.toArray(new String[0]),
+                arguments.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    void format(Appendable out, Arguments values) throws IOException {
+        for (int i = 0; i < arguments.length; i++) {
+            out.append(literals[i]);
+            values.append(arguments[i], out);
+        }
+        out.append(literals[arguments.length]);
+    }
+}
@@ -0,0 +1,106 @@
+package labs.pm.data;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latencies and counters of one ProductManager. Every call is counted,
+ * one in {@code sampleRate} calls is timed, and so is one in
+ * {@code sampleRate} lock acquisitions, so the lock histograms count
+ * the sampled acquisitions only. When disabled the histograms ignore
+ * what they are given and {@link #now()} does not read the clock.
+ */
+class Metrics implements ProductManagerMetricsMXBean {
+    private final boolean enabled;
+    private final int sampleRate;
+    private final Map<String, LatencyHistogram> latencies = new LinkedHashMap<>();
+    private final Map<String, LongAdder> counters = new LinkedHashMap<>();
+    final LatencyHistogram findProduct;
+    final LatencyHistogram reviewProduct;
+    final LatencyHistogram reviewProducts;
+    final LatencyHistogram getDiscounts;
+    final LatencyHistogram printProductReport;
+    final LatencyHistogram load;
+    final LatencyHistogram dump;
+    final LatencyHistogram restore;
+    final LatencyHistogram readLockWait;
+    final LatencyHistogram readLockHold;
+    final LatencyHistogram writeLockWait;
+    final LatencyHistogram writeLockHold;
+    final LongAdder parseErrors;
+    final LongAdder eventsDropped;
+
+    Metrics(boolean enabled, int sampleRate) {
+        this.enabled = enabled;
+        this.sampleRate = Math.max(1, sampleRate);
+        findProduct = latency("findProduct");
+        reviewProduct = latency("reviewProduct");
+        reviewProducts = latency("reviewProducts");
+        getDiscounts = latency("getDiscounts");
+        printProductReport = latency("printProductReport");
+        load = latency("load");
+        dump = latency("dump");
+        restore = latency("restore");
+        readLockWait = latency("lock.read.wait");
+        readLockHold = latency("lock.read.hold");
+        writeLockWait = latency("lock.write.wait");
+        writeLockHold = latency("lock.write.hold");
+        parseErrors = counter("parse.errors");
+        eventsDropped = counter("events.dropped");
+    }
+
+    private LatencyHistogram latency(String name) {
+        LatencyHistogram histogram = new LatencyHistogram(enabled);
+        latencies.put(name, histogram);
+        return histogram;
+    }
+
+    private LongAdder counter(String name) {
+        LongAdder counter = new LongAdder();
+        counters.put(name, counter);
+        return counter;
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return start time of a sampled call, {@link LatencyHistogram#NOT_TIMED} for the others
+     */
+    long now() {
+        return sampled() ? System.nanoTime() : LatencyHistogram.NOT_TIMED;
+    }
+
+    /**
+     * @return start time of a call that is always timed, for slow operations
+     */
+    long nowAlways() {
+        return enabled ? System.nanoTime() : LatencyHistogram.NOT_TIMED;
+    }
+
+    boolean sampled() {
+        return enabled && (sampleRate == 1 || ThreadLocalRandom.current().nextInt(sampleRate) == 0);
+    }
+
+    @Override
+    public Map<String, LatencySnapshot> getLatencies() {
+        Map<String, LatencySnapshot> result = new LinkedHashMap<>();
+        latencies.forEach((name, histogram) -> result.put(name, histogram.snapshot()));
+        return Collections.unmodifiableMap(result);
+    }
+
+    @Override
+    public Map<String, Long> getCounters() {
+        Map<String, Long> result = new LinkedHashMap<>();
+        counters.forEach((name, counter) -> result.put(name, counter.sum()));
+        return Collections.unmodifiableMap(result);
+    }
+
+    MetricsSnapshot snapshot() {
+        return new MetricsSnapshot(getLatencies(), getCounters());
+    }
+}
@@ -0,0 +1,32 @@
+package labs.pm.data;
+
+import java.util.Map;
+
+public class MetricsSnapshot {
+    private final Map<String, LatencySnapshot> latencies;
+    private final Map<String, Long> counters;
+
+    MetricsSnapshot(Map<String, LatencySnapshot> latencies, Map<String, Long> counters) {
+        this.latencies = latencies;
+        this.counters = counters;
+    }
+
+    /**
+     * @return durations by operation name, such as {@code findProduct} or {@code lock.write.wait}
+     */
+    public Map<String, LatencySnapshot> getLatencies() {
+        return latencies;
+    }
+
+    public Map<String, Long> getCounters() {
+        return counters;
+    }
+
+    @Override
+    public String toString() {
+        return "MetricsSnapshot{" +
+                "latencies=" + latencies +
+                ", counters=" + counters +
+                '}';
+    }
+}
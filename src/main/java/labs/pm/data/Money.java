@@ -0,0 +1,61 @@
+package labs.pm.data;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Money amounts as a long of minor units (hundredths), so discounts can be
+ * computed and summed without BigDecimal. Amounts with more than two
+ * decimals or out of long range have no minor units form and take the
+ * BigDecimal path, rounded the same way.
+ */
+final class Money {
+    static final int SCALE = 2;
+    static final long NOT_EXACT = Long.MIN_VALUE;
+    private static final long RATE_UNSCALED = Product.DISCOUNT_RATE.unscaledValue().longValueExact();
+    private static final long RATE_DIVISOR = BigDecimal.ONE.movePointRight(Product.DISCOUNT_RATE.scale()).longValueExact();
+
+    private Money() {
+    }
+
+    /**
+     * @return the amount in minor units, or {@link #NOT_EXACT}
+     */
+    static long toMinor(BigDecimal amount) {
+        if (amount.scale() > SCALE) {
+            return NOT_EXACT;
+        }
+        try {
+            long minor = amount.movePointRight(SCALE).longValueExact();
+            return minor == NOT_EXACT ? NOT_EXACT : minor;
+        } catch (ArithmeticException e) {
+            return NOT_EXACT;
+        }
+    }
+
+    static BigDecimal toDecimal(long minor) {
+        return BigDecimal.valueOf(minor, SCALE);
+    }
+
+    /**
+     * @return {@code price * DISCOUNT_RATE} rounded half up to minor units
+     */
+    static long discount(long priceMinor, BigDecimal price) {
+        if (priceMinor != NOT_EXACT) {
+            long product = priceMinor * RATE_UNSCALED;
+            if (priceMinor == 0 || product / priceMinor == RATE_UNSCALED) {
+                return divideHalfUp(product, RATE_DIVISOR);
+            }
+        }
+        return price.multiply(Product.DISCOUNT_RATE).setScale(SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    private static long divideHalfUp(long value, long divisor) {
+        long quotient = value / divisor;
+        long remainder = value % divisor;
+        if (Math.abs(remainder) * 2 >= divisor) {
+            quotient += Long.signum(value);
+        }
+        return quotient;
+    }
+}
@@ -0,0 +1,75 @@
+package labs.pm.data;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Distinct strings stored once as UTF-8 bytes in one array, found by
+ * content through an open addressing table of ids. A string costs its
+ * bytes plus about 12 bytes of bookkeeping, instead of a String object
+ * and its array, and is only decoded when asked for. Not thread safe.
+ */
+class NameDictionary {
+    private byte[] bytes = new byte[1024];
+    private int[] offsets = new int[65];
+    private int[] table = new int[128];
+    private int size;
+
+    /**
+     * @return the id of the string, adding it if it is new
+     */
+    int intern(String text) {
+        byte[] encoded = text.getBytes(StandardCharsets.UTF_8);
+        int hash = hash(encoded, 0, encoded.length);
+        int mask = table.length - 1;
+        int slot = hash & mask;
+        for (int id; (id = table[slot] - 1) >= 0; slot = (slot + 1) & mask) {
+            if (Arrays.equals(bytes, offsets[id], offsets[id + 1], encoded, 0, encoded.length)) {
+                return id;
+            }
+        }
+        int id = size++;
+        if (offsets.length == size) {
+            offsets = Arrays.copyOf(offsets, size * 2 + 1);
+        }
+        int end = offsets[id] + encoded.length;
+        if (end > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(end, bytes.length * 2));
+        }
+        System.arraycopy(encoded, 0, bytes, offsets[id], encoded.length);
+        offsets[id + 1] = end;
+        table[slot] = id + 1;
+        if (size * 2 > table.length) {
+            rehash(table.length * 2);
+        }
+        return id;
+    }
+
+    String get(int id) {
+        return new String(bytes, offsets[id], offsets[id + 1] - offsets[id], StandardCharsets.UTF_8);
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void rehash(int capacity) {
+        table = new int[capacity];
+        int mask = capacity - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = hash(bytes, offsets[id], offsets[id + 1]) & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = id + 1;
+        }
+    }
+
+    private static int hash(byte[] data, int from, int to) {
+        int h = 1;
+        for (int i = from; i < to; i++) {
+            h = 31 * h + data[i];
+        }
+        return h ^ (h >>> 16);
+    }
+}
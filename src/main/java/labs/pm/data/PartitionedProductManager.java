@@ -0,0 +1,191 @@
+package labs.pm.data;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Catalog split over independent managers by product id, each with its
+ * own store, locks and background threads, so writes to different
+ * partitions never meet. Single product calls go to the partition of the
+ * id, queries and discounts ask every partition and merge the results.
+ * Built by {@link ProductManager.Builder#buildPartitioned(int)}, closing
+ * it closes every partition.
+ */
+public class PartitionedProductManager implements AutoCloseable {
+    private final Logger logger = Logger.getLogger(PartitionedProductManager.class.getName());
+    private final ProductManager[] partitions;
+
+    PartitionedProductManager(List<ProductManager> partitions) {
+        this.partitions = partitions.toArray(new ProductManager[0]);
+    }
+
+    static int partitionOf(int id, int partitions) {
+        return Math.floorMod(id * 0x9E3779B9, partitions);
+    }
+
+    private ProductManager partition(int id) {
+        return partitions[partitionOf(id, partitions.length)];
+    }
+
+    /**
+     * @return the partitions, for their events, metrics and load progress
+     */
+    public List<ProductManager> getPartitions() {
+        return List.of(partitions);
+    }
+
+    public Product createProduct(int id, String name, BigDecimal price, Rating rating, LocalDate bestBefore) {
+        return partition(id).createProduct(id, name, price, rating, bestBefore);
+    }
+
+    public Product createProduct(int id, String name, BigDecimal price, Rating rating) {
+        return partition(id).createProduct(id, name, price, rating);
+    }
+
+    public Product reviewProduct(int id, Rating rating, String comments) {
+        return partition(id).reviewProduct(id, rating, comments);
+    }
+
+    /**
+     * @see ProductManager#reviewProducts(Collection)
+     */
+    public List<Product> reviewProducts(Collection<ProductReview> reviews) {
+        List<List<ProductReview>> split = new ArrayList<>(partitions.length);
+        for (int i = 0; i < partitions.length; i++) {
+            split.add(new ArrayList<>());
+        }
+        int[] partitionOfItem = new int[reviews.size()];
+        int position = 0;
+        for (ProductReview review : reviews) {
+            int partition = partitionOf(review.getProductId(), partitions.length);
+            split.get(partition).add(review);
+            partitionOfItem[position++] = partition;
+        }
+        List<List<Product>> reviewed = new ArrayList<>(partitions.length);
+        for (int i = 0; i < partitions.length; i++) {
+            reviewed.add(split.get(i).isEmpty() ? List.of() : partitions[i].reviewProducts(split.get(i)));
+        }
+        int[] next = new int[partitions.length];
+        Product[] results = new Product[partitionOfItem.length];
+        for (int i = 0; i < results.length; i++) {
+            results[i] = reviewed.get(partitionOfItem[i]).get(next[partitionOfItem[i]]++);
+        }
+        return Arrays.asList(results);
+    }
+
+    public Product findProduct(int id) throws ProductManagerException {
+        return partition(id).findProduct(id);
+    }
+
+    public RatingSummary getRatingSummary(int id) throws ProductManagerException {
+        return partition(id).getRatingSummary(id);
+    }
+
+    public void printProductReport(int id, String languageTag, String client) {
+        partition(id).printProductReport(id, languageTag, client);
+    }
+
+    public CompletableFuture<Path> printProductReportAsync(int id, String languageTag, String client) {
+        return partition(id).printProductReportAsync(id, languageTag, client);
+    }
+
+    public void compact() {
+        for (ProductManager partition : partitions) {
+            partition.compact();
+        }
+    }
+
+    public void printProducts(Predicate<Product> filter, Comparator<Product> sorter, String languageTag) {
+        try {
+            printProducts(filter, sorter, Integer.MAX_VALUE, languageTag, System.out);
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Error printing products " + e.getMessage());
+        }
+    }
+
+    public void printProducts(Predicate<Product> filter, Comparator<Product> sorter, int limit,
+                              String languageTag, Appendable out) throws IOException {
+        ResourceFormatter formatter = ProductManager.getFormatter(languageTag);
+        List<Product> result = findProducts(filter, sorter, limit);
+        for (int i = 0; i < result.size(); i++) {
+            if (i > 0) {
+                out.append('\n');
+            }
+            formatter.formatProduct(result.get(i), out);
+        }
+        out.append(System.lineSeparator());
+    }
+
+    /**
+     * @see ProductManager#findProducts(Predicate, Comparator, int)
+     */
+    public List<Product> findProducts(Predicate<Product> filter, Comparator<Product> sorter, int limit) {
+        TopN<Product> top = new TopN<>(sorter.thenComparingInt(Product::getId), limit);
+        for (ProductManager partition : partitions) {
+            partition.findProducts(filter, sorter, limit).forEach(top::offer);
+        }
+        return top.toList();
+    }
+
+    /**
+     * @see ProductManager#findProducts(Predicate, Comparator, ProductPage.Cursor, int)
+     */
+    public ProductPage findProducts(Predicate<Product> filter, Comparator<Product> sorter,
+                                    ProductPage.Cursor after, int pageSize) {
+        pageSize = ProductManager.pageSize(pageSize);
+        TopN<Product> top = new TopN<>(sorter.thenComparingInt(Product::getId), pageSize + 1);
+        boolean more = false;
+        for (ProductManager partition : partitions) {
+            ProductPage page = partition.findProducts(filter, sorter, after, pageSize);
+            page.getProducts().forEach(top::offer);
+            more |= page.hasNext();
+        }
+        List<Product> products = top.toList();
+        if (products.size() <= pageSize && !more) {
+            return new ProductPage(products, null);
+        }
+        products = products.subList(0, Math.min(pageSize, products.size()));
+        return new ProductPage(products, new ProductPage.Cursor(products.get(products.size() - 1)));
+    }
+
+    /**
+     * Sums the exact totals of all partitions before formatting, so the
+     * result is the same as from one manager holding every product.
+     */
+    public Map<String, String> getDiscounts(String languageTag) {
+        LocalDate today = LocalDate.now();
+        boolean happyHour = Drink.isHappyHour(LocalTime.now());
+        Map<Rating, BigDecimal> totals = new EnumMap<>(Rating.class);
+        for (ProductManager partition : partitions) {
+            partition.getDiscountTotals(today, happyHour)
+                    .forEach((rating, total) -> totals.merge(rating, total, BigDecimal::add));
+        }
+        ResourceFormatter formatter = ProductManager.getFormatter(languageTag);
+        Map<String, String> discounts = new HashMap<>();
+        totals.forEach((rating, total) -> discounts.put(rating.getStars(), formatter.formatMoney(total)));
+        return Collections.unmodifiableMap(discounts);
+    }
+
+    @Override
+    public void close() {
+        for (ProductManager partition : partitions) {
+            partition.close();
+        }
+    }
+}
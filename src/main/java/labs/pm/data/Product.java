@@ -2,23 +2,22 @@ package labs.pm.data;
 
 import java.io.Serializable;
 import java.math.BigDecimal;
-import java.math.RoundingMode;
 import java.time.LocalDate;
 import java.util.Objects;
 
-import static java.math.RoundingMode.*;
-
 public abstract class Product implements Rateable<Product>, Serializable {
     public static final BigDecimal DISCOUNT_RATE = BigDecimal.valueOf(0.1);
     private final int id;
     private final String name;
     private final BigDecimal price;
+    private final long priceMinor;
     private final Rating rating;
 
     Product(int id, String name, BigDecimal price, Rating rating) {
         this.id = id;
         this.name = name;
         this.price = price;
+        this.priceMinor = Money.toMinor(price);
         this.rating = rating;
     }
 
@@ -39,7 +38,18 @@ public abstract class Product implements Rateable<Product>, Serializable {
     }
 
     public BigDecimal getDiscount(){
-        return price.multiply(DISCOUNT_RATE).setScale(2, HALF_UP);
+        return getBaseDiscount();
+    }
+
+    BigDecimal getBaseDiscount() {
+        return Money.toDecimal(getBaseDiscountMinor());
+    }
+
+    /**
+     * @return the discount in minor units, computed without allocating
+     */
+    long getBaseDiscountMinor() {
+        return Money.discount(priceMinor, price);
     }
 
     public Rating getRating() {
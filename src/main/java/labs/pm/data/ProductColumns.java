@@ -0,0 +1,111 @@
+package labs.pm.data;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * Products of one store stripe as parallel primitive columns, one row per
+ * product: id, price in minor units and its scale, rating ordinal, type,
+ * best before epoch day and name id. Product objects are only created by
+ * {@link #get(int)}, filters on rating, price and date are tested on the
+ * columns. Guarded by the stripe lock like the records.
+ */
+class ProductColumns {
+    private static final byte DRINK = 0;
+    private static final byte FOOD = 1;
+    private static final byte INEXACT = -1;
+    private static final int NO_NAME = -1;
+    private static final Rating[] RATINGS = Rating.values();
+    private final NameDictionary names = new NameDictionary();
+    private final IntMap<BigDecimal> inexactPrices = new IntMap<>();
+    private int[] ids = new int[16];
+    private long[] prices = new long[16];
+    private byte[] scales = new byte[16];
+    private byte[] ratings = new byte[16];
+    private byte[] types = new byte[16];
+    private int[] bestBefore = new int[16];
+    private int[] nameIds = new int[16];
+    private int size;
+
+    /**
+     * @return the row of the product
+     */
+    int add(Product product) {
+        if (size == ids.length) {
+            int capacity = size * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            prices = Arrays.copyOf(prices, capacity);
+            scales = Arrays.copyOf(scales, capacity);
+            ratings = Arrays.copyOf(ratings, capacity);
+            types = Arrays.copyOf(types, capacity);
+            bestBefore = Arrays.copyOf(bestBefore, capacity);
+            nameIds = Arrays.copyOf(nameIds, capacity);
+        }
+        int row = size++;
+        ids[row] = product.getId();
+        prices[row] = Money.toMinor(product.getPrice());
+        if (prices[row] == Money.NOT_EXACT || product.getPrice().scale() < 0) {
+            scales[row] = INEXACT;
+            inexactPrices.put(row, product.getPrice());
+        } else {
+            scales[row] = (byte) product.getPrice().scale();
+        }
+        ratings[row] = (byte) product.getRating().ordinal();
+        if (product instanceof Food) {
+            types[row] = FOOD;
+            bestBefore[row] = (int) product.getBestBefore().toEpochDay();
+        } else {
+            types[row] = DRINK;
+        }
+        nameIds[row] = (product.getName() == null) ? NO_NAME : names.intern(product.getName());
+        return row;
+    }
+
+    Product get(int row) {
+        BigDecimal price = (scales[row] == INEXACT)
+                ? inexactPrices.get(row)
+                : Money.toDecimal(prices[row]).setScale(scales[row]);
+        String name = (nameIds[row] == NO_NAME) ? null : names.get(nameIds[row]);
+        return (types[row] == FOOD)
+                ? new Food(ids[row], name, price, RATINGS[ratings[row]], LocalDate.ofEpochDay(bestBefore[row]))
+                : new Drink(ids[row], name, price, RATINGS[ratings[row]]);
+    }
+
+    void setRating(int row, Rating rating) {
+        ratings[row] = (byte) rating.ordinal();
+    }
+
+    int size() {
+        return size;
+    }
+
+    int getId(int row) {
+        return ids[row];
+    }
+
+    /**
+     * Tests the rating, price and best before conditions of the filter,
+     * which rules a row out without creating its product.
+     */
+    boolean mayMatch(int row, ProductFilter filter) {
+        if (filter.getRatings() != null && !filter.getRatings().contains(RATINGS[ratings[row]])) {
+            return false;
+        }
+        if (filter.hasPrice() && prices[row] != Money.NOT_EXACT) {
+            long minor = prices[row];
+            if (filter.getMinPriceMinor() != Money.NOT_EXACT && minor < filter.getMinPriceMinor()
+                    || filter.getMaxPriceMinor() != Money.NOT_EXACT && minor > filter.getMaxPriceMinor()) {
+                return false;
+            }
+        }
+        if (filter.hasBestBefore()) {
+            if (types[row] != FOOD
+                    || filter.getBestBeforeFrom() != null && bestBefore[row] < filter.getBestBeforeFrom().toEpochDay()
+                    || filter.getBestBeforeTo() != null && bestBefore[row] > filter.getBestBeforeTo().toEpochDay()) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,22 @@
+package labs.pm.data;
+
+public class ProductCreated extends ProductEvent {
+    private final Product product;
+
+    ProductCreated(long sequence, Product product) {
+        super(sequence);
+        this.product = product;
+    }
+
+    public Product getProduct() {
+        return product;
+    }
+
+    @Override
+    public String toString() {
+        return "ProductCreated{" +
+                "sequence=" + getSequence() +
+                ", product=" + product +
+                '}';
+    }
+}
@@ -0,0 +1,19 @@
+package labs.pm.data;
+
+/**
+ * Change to the product catalog, published by
+ * {@link ProductManager#getEvents()}. Sequence numbers grow by one per
+ * event, a gap means events were dropped for a subscriber that fell behind,
+ * which then has to read the catalog again to catch up.
+ */
+public abstract class ProductEvent {
+    private final long sequence;
+
+    ProductEvent(long sequence) {
+        this.sequence = sequence;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+}
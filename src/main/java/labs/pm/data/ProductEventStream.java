@@ -0,0 +1,216 @@
+package labs.pm.data;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongFunction;
+
+/**
+ * Turns store changes into {@link ProductEvent}s for Flow subscribers.
+ * Writers only queue the event on a lock free queue, while they hold the
+ * product's stripe lock, so events of one product keep their order and
+ * writers of different stripes never wait for each other. The publisher
+ * thread numbers the events in queue order and hands them to the
+ * subscribers in batches of up to {@code batchSize} events. Each
+ * subscriber has its own buffer of batches and asks for more with
+ * {@link Flow.Subscription#request(long)}. Nothing ever waits for a
+ * subscriber: events that do not fit the queue or a subscriber's buffer
+ * are dropped and counted. No events are made while nobody subscribes,
+ * and the publisher thread starts with the first subscriber. Closing the
+ * stream publishes what is queued and completes the subscribers.
+ */
+class ProductEventStream implements ProductStore.Listener, Closeable {
+    private final SubmissionPublisher<List<ProductEvent>> publisher;
+    private final ExecutorService executor;
+    private final int capacity;
+    private final int batchSize;
+    private final LongAdder dropped;
+    private final Queue<LongFunction<ProductEvent>> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    // events dropped since the publisher last numbered events, they leave a gap in the sequence
+    private final AtomicLong skipped = new AtomicLong();
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile Thread thread;
+    private volatile boolean waiting;
+    private volatile boolean closed;
+    private long sequence;
+
+    ProductEventStream(int capacity, int batchSize, LongAdder dropped) {
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.dropped = dropped;
+        // a cached pool has no threads until subscribers are called
+        executor = Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task, "product-event-subscriber");
+            thread.setDaemon(true);
+            return thread;
+        });
+        publisher = new SubmissionPublisher<>(executor, Math.max(1, capacity / batchSize));
+    }
+
+    Flow.Publisher<List<ProductEvent>> getPublisher() {
+        return this::subscribe;
+    }
+
+    private void subscribe(Flow.Subscriber<? super List<ProductEvent>> subscriber) {
+        try {
+            lock.lock();
+            if (!closed) {
+                if (thread == null) {
+                    thread = new Thread(this::publish, "product-event-publisher");
+                    thread.setDaemon(true);
+                    thread.start();
+                }
+                publisher.subscribe(subscriber);
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+            }
+
+            @Override
+            public void cancel() {
+            }
+        });
+        subscriber.onComplete();
+    }
+
+    @Override
+    public void close() {
+        try {
+            lock.lock();
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (thread == null) {
+                shutdown();
+            } else {
+                LockSupport.unpark(thread);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void shutdown() {
+        publisher.close();
+        executor.shutdown();
+    }
+
+    @Override
+    public void added(Product product) {
+        if (publisher.hasSubscribers()) {
+            queue(sequence -> new ProductCreated(sequence, product));
+        }
+    }
+
+    @Override
+    public void loaded(Product product) {
+        if (publisher.hasSubscribers()) {
+            queue(sequence -> new ProductLoaded(sequence, product));
+        }
+    }
+
+    @Override
+    public void replaced(Product previous, Product current) {
+        if (publisher.hasSubscribers()) {
+            queue(sequence -> new ProductReviewed(sequence, current, previous.getRating()));
+        }
+    }
+
+    @Override
+    public void removed(Product product) {
+        // evicted from memory, still in the catalog
+    }
+
+    @Override
+    public void cleared() {
+    }
+
+    @Override
+    public void replacedAll(List<Product> products) {
+        if (publisher.hasSubscribers()) {
+            queue(sequence -> new ProductRestored(sequence, products));
+        }
+    }
+
+    private void queue(LongFunction<ProductEvent> event) {
+        if (closed) {
+            drop();
+            return;
+        }
+        if (size.incrementAndGet() > capacity) {
+            size.decrementAndGet();
+            drop();
+            return;
+        }
+        pending.offer(event);
+        if (waiting) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    private void drop() {
+        skipped.incrementAndGet();
+        dropped.increment();
+    }
+
+    private void publish() {
+        List<ProductEvent> batch = new ArrayList<>(batchSize);
+        while (true) {
+            LongFunction<ProductEvent> event = pending.poll();
+            if (event == null) {
+                offer(batch);
+                if (closed) {
+                    break;
+                }
+                // set before the queue is checked again, so a writer queueing meanwhile sees it and unparks
+                waiting = true;
+                if (pending.isEmpty() && !closed) {
+                    LockSupport.park(this);
+                }
+                waiting = false;
+                continue;
+            }
+            size.decrementAndGet();
+            sequence += skipped.getAndSet(0) + 1;
+            batch.add(event.apply(sequence));
+            if (batch.size() == batchSize) {
+                offer(batch);
+            }
+        }
+        try {
+            lock.lock();
+            shutdown();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void offer(List<ProductEvent> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        publisher.offer(List.copyOf(batch), (subscriber, rejected) -> {
+            dropped.add(rejected.size());
+            return false;
+        });
+        batch.clear();
+    }
+}
@@ -0,0 +1,128 @@
+package labs.pm.data;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.EnumSet;
+import java.util.function.Predicate;
+
+/**
+ * Product predicate made of the conditions ProductManager keeps indexes
+ * for: rating, price range and food best before date range, plus any
+ * other predicate. Queries given a ProductFilter read only the products
+ * of the most selective index instead of the whole catalog.
+ * Ranges are inclusive, a null bound is open. Immutable.
+ */
+public class ProductFilter implements Predicate<Product> {
+    private static final ProductFilter ALL = new ProductFilter(null, null, null, null, null, null);
+    private final EnumSet<Rating> ratings;
+    private final BigDecimal minPrice;
+    private final BigDecimal maxPrice;
+    private final LocalDate bestBeforeFrom;
+    private final LocalDate bestBeforeTo;
+    private final Predicate<Product> other;
+    private final long minPriceMinor;
+    private final long maxPriceMinor;
+
+    private ProductFilter(EnumSet<Rating> ratings, BigDecimal minPrice, BigDecimal maxPrice,
+                          LocalDate bestBeforeFrom, LocalDate bestBeforeTo, Predicate<Product> other) {
+        this.ratings = ratings;
+        this.minPrice = minPrice;
+        this.maxPrice = maxPrice;
+        this.bestBeforeFrom = bestBeforeFrom;
+        this.bestBeforeTo = bestBeforeTo;
+        this.other = other;
+        this.minPriceMinor = (minPrice == null) ? Money.NOT_EXACT : Money.toMinor(minPrice);
+        this.maxPriceMinor = (maxPrice == null) ? Money.NOT_EXACT : Money.toMinor(maxPrice);
+    }
+
+    public static ProductFilter all() {
+        return ALL;
+    }
+
+    public ProductFilter withRating(Rating first, Rating... rest) {
+        return new ProductFilter(EnumSet.of(first, rest), minPrice, maxPrice, bestBeforeFrom, bestBeforeTo, other);
+    }
+
+    public ProductFilter withPriceBetween(BigDecimal min, BigDecimal max) {
+        return new ProductFilter(ratings, min, max, bestBeforeFrom, bestBeforeTo, other);
+    }
+
+    /**
+     * Keeps only food with a best before date in the range.
+     */
+    public ProductFilter withBestBeforeBetween(LocalDate from, LocalDate to) {
+        return new ProductFilter(ratings, minPrice, maxPrice, from, to, other);
+    }
+
+    /**
+     * Keeps only food that expires from today to {@code days} days from now.
+     */
+    public ProductFilter expiringWithin(int days) {
+        LocalDate today = LocalDate.now();
+        return withBestBeforeBetween(today, today.plusDays(days));
+    }
+
+    @Override
+    public ProductFilter and(Predicate<? super Product> predicate) {
+        Predicate<Product> combined = (other == null) ? predicate::test : other.and(predicate);
+        return new ProductFilter(ratings, minPrice, maxPrice, bestBeforeFrom, bestBeforeTo, combined);
+    }
+
+    @Override
+    public boolean test(Product product) {
+        if (ratings != null && !ratings.contains(product.getRating())) {
+            return false;
+        }
+        if (minPrice != null && product.getPrice().compareTo(minPrice) < 0
+                || maxPrice != null && product.getPrice().compareTo(maxPrice) > 0) {
+            return false;
+        }
+        if (hasBestBefore()) {
+            if (!(product instanceof Food)
+                    || bestBeforeFrom != null && product.getBestBefore().isBefore(bestBeforeFrom)
+                    || bestBeforeTo != null && product.getBestBefore().isAfter(bestBeforeTo)) {
+                return false;
+            }
+        }
+        return other == null || other.test(product);
+    }
+
+    EnumSet<Rating> getRatings() {
+        return ratings;
+    }
+
+    boolean hasPrice() {
+        return minPrice != null || maxPrice != null;
+    }
+
+    BigDecimal getMinPrice() {
+        return minPrice;
+    }
+
+    BigDecimal getMaxPrice() {
+        return maxPrice;
+    }
+
+    /**
+     * @return the lower price bound in minor units, {@link Money#NOT_EXACT} when there is none or it has no such form
+     */
+    long getMinPriceMinor() {
+        return minPriceMinor;
+    }
+
+    long getMaxPriceMinor() {
+        return maxPriceMinor;
+    }
+
+    boolean hasBestBefore() {
+        return bestBeforeFrom != null || bestBeforeTo != null;
+    }
+
+    LocalDate getBestBeforeFrom() {
+        return bestBeforeFrom;
+    }
+
+    LocalDate getBestBeforeTo() {
+        return bestBeforeTo;
+    }
+}
@@ -0,0 +1,215 @@
+package labs.pm.data;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Secondary indexes of the product store: products by rating, by price and
+ * food by best before date. Kept up to date as a store listener, a
+ * re-rated product moves to its new rating bucket and every change
+ * replaces the previous copy of the product in all buckets.
+ * The index is split into one part per store stripe, with its own lock,
+ * so writers only wait for readers of their own part, never for writers
+ * of other stripes.
+ */
+class ProductIndex implements ProductStore.Listener {
+    private final Part[] parts;
+    private final IntUnaryOperator partOf;
+
+    private static class Part {
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private final Map<Rating, IntMap<Product>> byRating = new EnumMap<>(Rating.class);
+        private final NavigableMap<BigDecimal, IntMap<Product>> byPrice = new TreeMap<>();
+        private final NavigableMap<LocalDate, IntMap<Product>> byBestBefore = new TreeMap<>();
+
+        Part() {
+            clear();
+        }
+
+        void clear() {
+            for (Rating rating : Rating.values()) {
+                byRating.put(rating, new IntMap<>());
+            }
+            byPrice.clear();
+            byBestBefore.clear();
+        }
+    }
+
+    /**
+     * @param partOf the store stripe of a product id, from 0 to {@code partCount - 1}
+     */
+    ProductIndex(int partCount, IntUnaryOperator partOf) {
+        this.partOf = partOf;
+        parts = new Part[partCount];
+        for (int i = 0; i < partCount; i++) {
+            parts[i] = new Part();
+        }
+    }
+
+    private Part part(int id) {
+        return parts[partOf.applyAsInt(id)];
+    }
+
+    @Override
+    public void added(Product product) {
+        Part part = part(product.getId());
+        Lock writeLock = part.lock.writeLock();
+        try {
+            writeLock.lock();
+            put(part, product);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private static void put(Part part, Product product) {
+        part.byRating.get(product.getRating()).put(product.getId(), product);
+        part.byPrice.computeIfAbsent(product.getPrice(), price -> new IntMap<>()).put(product.getId(), product);
+        if (product instanceof Food) {
+            part.byBestBefore.computeIfAbsent(product.getBestBefore(), date -> new IntMap<>())
+                    .put(product.getId(), product);
+        }
+    }
+
+    @Override
+    public void replaced(Product previous, Product current) {
+        Part part = part(current.getId());
+        Lock writeLock = part.lock.writeLock();
+        try {
+            writeLock.lock();
+            if (previous.getRating() != current.getRating()) {
+                part.byRating.get(previous.getRating()).remove(previous.getId());
+            }
+            put(part, current);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void removed(Product product) {
+        Part part = part(product.getId());
+        Lock writeLock = part.lock.writeLock();
+        try {
+            writeLock.lock();
+            part.byRating.get(product.getRating()).remove(product.getId());
+            remove(part.byPrice, product.getPrice(), product.getId());
+            if (product instanceof Food) {
+                remove(part.byBestBefore, product.getBestBefore(), product.getId());
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private static <K> void remove(Map<K, IntMap<Product>> index, K key, int id) {
+        IntMap<Product> bucket = index.get(key);
+        if (bucket != null) {
+            bucket.remove(id);
+            if (bucket.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+
+    @Override
+    public void cleared() {
+        for (Part part : parts) {
+            Lock writeLock = part.lock.writeLock();
+            try {
+                writeLock.lock();
+                part.clear();
+            } finally {
+                writeLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Picks the index that yields the fewest products for the filter.
+     * Parts are read one at a time, so the sizes are an estimate when
+     * products change meanwhile.
+     *
+     * @return products that may match, copied so they can be tested
+     * without the index lock, or null when no index applies and
+     * the whole catalog has to be scanned
+     */
+    List<Product> candidates(ProductFilter filter) {
+        List<Function<Part, Collection<IntMap<Product>>>> indexes = new ArrayList<>();
+        if (filter.getRatings() != null) {
+            indexes.add(part -> {
+                List<IntMap<Product>> buckets = new ArrayList<>();
+                filter.getRatings().forEach(rating -> buckets.add(part.byRating.get(rating)));
+                return buckets;
+            });
+        }
+        if (filter.hasPrice()) {
+            indexes.add(part -> range(part.byPrice, filter.getMinPrice(), filter.getMaxPrice()).values());
+        }
+        if (filter.hasBestBefore()) {
+            indexes.add(part -> range(part.byBestBefore, filter.getBestBeforeFrom(), filter.getBestBeforeTo()).values());
+        }
+        if (indexes.isEmpty()) {
+            return null;
+        }
+        long[] sizes = new long[indexes.size()];
+        for (Part part : parts) {
+            Lock readLock = part.lock.readLock();
+            try {
+                readLock.lock();
+                for (int i = 0; i < sizes.length; i++) {
+                    sizes[i] += size(indexes.get(i).apply(part));
+                }
+            } finally {
+                readLock.unlock();
+            }
+        }
+        int best = 0;
+        for (int i = 1; i < sizes.length; i++) {
+            if (sizes[i] < sizes[best]) {
+                best = i;
+            }
+        }
+        List<Product> result = new ArrayList<>((int) Math.min(sizes[best], Integer.MAX_VALUE - 8));
+        for (Part part : parts) {
+            Lock readLock = part.lock.readLock();
+            try {
+                readLock.lock();
+                indexes.get(best).apply(part).forEach(bucket -> bucket.forEach(result::add));
+            } finally {
+                readLock.unlock();
+            }
+        }
+        return result;
+    }
+
+    private static <K extends Comparable<? super K>> NavigableMap<K, IntMap<Product>> range(
+            NavigableMap<K, IntMap<Product>> index, K from, K to) {
+        if (from != null && to != null && from.compareTo(to) > 0) {
+            return new TreeMap<>();
+        }
+        if (from == null) {
+            return to == null ? index : index.headMap(to, true);
+        }
+        return to == null ? index.tailMap(from, true) : index.subMap(from, true, to, true);
+    }
+
+    private static long size(Collection<IntMap<Product>> buckets) {
+        long size = 0;
+        for (IntMap<Product> bucket : buckets) {
+            size += bucket.size();
+        }
+        return size;
+    }
+}
@@ -0,0 +1,27 @@
+package labs.pm.data;
+
+/**
+ * A product that was already in the catalog was read into memory, from
+ * the data folder or the journal. A lazy catalog loads a product again
+ * each time it is used after it was evicted, so a view may already know it.
+ */
+public class ProductLoaded extends ProductEvent {
+    private final Product product;
+
+    ProductLoaded(long sequence, Product product) {
+        super(sequence);
+        this.product = product;
+    }
+
+    public Product getProduct() {
+        return product;
+    }
+
+    @Override
+    public String toString() {
+        return "ProductLoaded{" +
+                "sequence=" + getSequence() +
+                ", product=" + product +
+                '}';
+    }
+}
@@ -1,168 +1,844 @@
 package labs.pm.data;
 
 import java.io.*;
+import java.lang.management.ManagementFactory;
 import java.math.BigDecimal;
-import java.nio.charset.Charset;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
 import java.text.MessageFormat;
-import java.text.NumberFormat;
 import java.text.ParseException;
 import java.time.Instant;
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
-import java.time.format.DateTimeParseException;
-import java.time.format.FormatStyle;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Predicate;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
-public class ProductManager {
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+public class ProductManager implements AutoCloseable {
 
-    private Map<Product, List<Review>> products = new HashMap<>();
     private static final Map<String, ResourceFormatter> formatters = Map.of(
             "en-GB", new ResourceFormatter(Locale.UK),
             "en-US", new ResourceFormatter(Locale.US),
             "ru-RU", new ResourceFormatter(new Locale("ru", "RU")),
             "zh-CN", new ResourceFormatter(Locale.CHINA)
     );
+    private static final AtomicInteger instances = new AtomicInteger();
     private final Logger logger = Logger.getLogger(ProductManager.class.getName());
-    private final ResourceBundle config = ResourceBundle.getBundle("config");
-    private final MessageFormat productFormat = new MessageFormat(config.getString("product.data.format"));
-    private final MessageFormat reviewFormat = new MessageFormat(config.getString("review.data.format"));
-    private final Path reportFolder = Path.of(config.getString("report.folder"));
-    private final Path dataFolder = Path.of(config.getString("data.folder"));
-    private final Path tempFolder = Path.of(config.getString("temp.folder"));
-    private static final ProductManager pm = new ProductManager();
-    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
-    private final Lock writeLock = lock.writeLock();
-    private final Lock readLock = lock.readLock();
+    private final ResourceBundle config;
+    private final RowFormat productFormat;
+    private final RowFormat reviewFormat;
+    private final Path reportFolder;
+    private final Path dataFolder;
+    private final Path tempFolder;
+    private final int partition;
+    private final int partitions;
+    private final Metrics metrics;
+    private final ObjectName metricsName;
+    private final ReviewStore reviewStore;
+    private final ProductStore products;
+    private final LazyCatalog lazy;
+    private final int loadThreads;
+    private final Journal journal;
+    private final DiscountAggregate discounts = new DiscountAggregate();
+    private final ProductIndex index;
+    private final ProductEventStream events;
+    private final ReportWriter reportWriter;
+    private final RenderCache<String> reportCache;
+    private final ForkJoinPool queryPool;
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private volatile LoadProgress loadProgress = new LoadProgress();
+
+    // holder class, so the loader threads started by the constructor never wait on ProductManager class initialization
+    private static class Holder {
+        private static final ProductManager pm = builder().build();
+    }
 
     public static ProductManager getInstance() {
-        return pm;
+        return Holder.pm;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Settings of an independent manager, given on top of config.properties
+     * or another base configuration. Managers built in one JVM share nothing
+     * but the formatters, give each its own temp folder when journals or
+     * dumps are enabled. The tuning keys are optional, a base configuration
+     * without them gets the values of {@link #DEFAULTS}, only the formats,
+     * folders and file names have to be given.
+     */
+    public static class Builder {
+        static final Map<String, String> DEFAULTS = Map.ofEntries(
+                Map.entry("store.stripes", "64"),
+                Map.entry("store.layout", "objects"),
+                Map.entry("load.threads", "0"),
+                Map.entry("load.background", "false"),
+                Map.entry("load.lazy", "false"),
+                Map.entry("load.lazy.capacity", "100000"),
+                Map.entry("review.store", "heap"),
+                Map.entry("review.buffer.size", "64"),
+                Map.entry("journal.enabled", "false"),
+                Map.entry("journal.sync", "group"),
+                Map.entry("report.threads", "2"),
+                Map.entry("report.queue", "1000"),
+                Map.entry("report.cache.chars", "16000000"),
+                Map.entry("query.parallelism", "0"),
+                Map.entry("metrics.enabled", "true"),
+                Map.entry("metrics.sample.rate", "16"),
+                Map.entry("events.buffer", "8192"),
+                Map.entry("events.batch", "256"),
+                Map.entry("partition.index", "0"),
+                Map.entry("partition.count", "1"));
+
+        private ResourceBundle config;
+        private final Map<String, String> properties = new LinkedHashMap<>();
+
+        private Builder() {
+        }
+
+        public Builder config(ResourceBundle config) {
+            this.config = config;
+            return this;
+        }
+
+        public Builder property(String key, String value) {
+            properties.put(key, value);
+            return this;
+        }
+
+        public Builder dataFolder(Path folder) {
+            return property("data.folder", folder.toString());
+        }
+
+        public Builder tempFolder(Path folder) {
+            return property("temp.folder", folder.toString());
+        }
+
+        public Builder reportFolder(Path folder) {
+            return property("report.folder", folder.toString());
+        }
+
+        private ResourceBundle resolve() {
+            ResourceBundle base = (config == null) ? ResourceBundle.getBundle("config") : config;
+            return new Overrides(base, properties);
+        }
+
+        public ProductManager build() {
+            return new ProductManager(resolve());
+        }
+
+        /**
+         * Builds {@code count} managers that share the data folder, each
+         * loading and owning the products whose id hashes to it, with temp
+         * folders {@code partition0}, {@code partition1}, ... in the temp folder.
+         */
+        public PartitionedProductManager buildPartitioned(int count) {
+            if (count < 1) {
+                throw new IllegalArgumentException("Partition count must be positive " + count);
+            }
+            Path temp = Path.of(resolve().getString("temp.folder"));
+            List<ProductManager> managers = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                Builder partition = new Builder().config(config);
+                partition.properties.putAll(properties);
+                partition.tempFolder(temp.resolve("partition" + i))
+                        .property("partition.index", Integer.toString(i))
+                        .property("partition.count", Integer.toString(count));
+                managers.add(partition.build());
+            }
+            return new PartitionedProductManager(managers);
+        }
+    }
+
+    /**
+     * Builder properties over the base configuration over the defaults.
+     */
+    private static class Overrides extends ResourceBundle {
+        private final Map<String, String> values;
+
+        Overrides(ResourceBundle base, Map<String, String> values) {
+            setParent(base);
+            this.values = Map.copyOf(values);
+        }
+
+        @Override
+        protected Object handleGetObject(String key) {
+            String value = values.get(key);
+            return (value == null && !parent.containsKey(key)) ? Builder.DEFAULTS.get(key) : value;
+        }
+
+        @Override
+        public Enumeration<String> getKeys() {
+            Set<String> keys = new LinkedHashSet<>(parent.keySet());
+            keys.addAll(Builder.DEFAULTS.keySet());
+            keys.addAll(values.keySet());
+            return Collections.enumeration(keys);
+        }
+    }
+
+    ProductManager(ResourceBundle config) {
+        this.config = config;
+        productFormat = RowFormat.compile(config.getString("product.data.format"));
+        reviewFormat = RowFormat.compile(config.getString("review.data.format"));
+        reportFolder = Path.of(config.getString("report.folder"));
+        dataFolder = Path.of(config.getString("data.folder"));
+        tempFolder = Path.of(config.getString("temp.folder"));
+        partition = Integer.parseInt(config.getString("partition.index"));
+        partitions = Integer.parseInt(config.getString("partition.count"));
+        metrics = new Metrics(Boolean.parseBoolean(config.getString("metrics.enabled")),
+                Integer.parseInt(config.getString("metrics.sample.rate")));
+        metricsName = registerMetrics();
+        boolean journaled = Boolean.parseBoolean(config.getString("journal.enabled"));
+        boolean lazyLoad = Boolean.parseBoolean(config.getString("load.lazy"));
+        if (lazyLoad && journaled) {
+            logger.log(Level.WARNING, "Lazy loading keeps changes in the data files, not the journal, loading all data");
+            lazyLoad = false;
+        }
+        // the columnar layout keeps no product objects, so it scans its columns instead of keeping indexes of them
+        boolean columnar = "columns".equals(config.getString("store.layout"));
+        if (lazyLoad && columnar) {
+            logger.log(Level.WARNING, "Lazy loading evicts products, which the columnar layout cannot, using objects");
+            columnar = false;
+        }
+        lazy = lazyLoad
+                ? new LazyCatalog(dataFolder, config.getString("product.data.file"),
+                        config.getString("reviews.data.file"), productFormat, reviewFormat,
+                        Integer.parseInt(config.getString("load.lazy.capacity")))
+                : null;
+        reviewStore = createReviewStore();
+        products = new ProductStore(Integer.parseInt(config.getString("store.stripes")), reviewStore, metrics,
+                columnar);
+        products.addListener(discounts);
+        index = columnar ? null : new ProductIndex(products.getStripeCount(), products::indexOf);
+        if (index != null) {
+            products.addListener(index);
+        }
+        events = new ProductEventStream(Integer.parseInt(config.getString("events.buffer")),
+                Integer.parseInt(config.getString("events.batch")), metrics.eventsDropped);
+        products.addListener(events);
+        reportWriter = new ReportWriter(Integer.parseInt(config.getString("report.threads")),
+                Integer.parseInt(config.getString("report.queue")));
+        reportCache = new RenderCache<>(Long.parseLong(config.getString("report.cache.chars")));
+        int parallelism = Integer.parseInt(config.getString("query.parallelism"));
+        queryPool = (parallelism > 0) ? new ForkJoinPool(parallelism) : null;
+        loadThreads = Integer.parseInt(config.getString("load.threads"));
+        if (journaled) {
+            // mutations must not be journaled before the journal is replayed, so recovery never runs in background
+            journal = recover(Journal.SyncMode.valueOf(config.getString("journal.sync").toUpperCase()));
+        } else if (lazy == null && Boolean.parseBoolean(config.getString("load.background"))) {
+            journal = null;
+            Thread loader = new Thread(this::loadData, "product-data-loader");
+            loader.setDaemon(true);
+            loader.start();
+        } else {
+            journal = null;
+            loadData();
+        }
+    }
+
+    /**
+     * @return the name the metrics are registered under, null when they are not
+     */
+    private ObjectName registerMetrics() {
+        if (!metrics.isEnabled()) {
+            return null;
+        }
+        try {
+            ObjectName name = new ObjectName("labs.pm.data:type=ProductManager,instance=" + instances.incrementAndGet());
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, name);
+            return name;
+        } catch (JMException e) {
+            logger.log(Level.WARNING, "Error registering metrics " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Flushes, writes the reports already submitted and releases the
+     * threads, files and metrics registration of the manager. Event
+     * subscribers get the events queued so far and are then completed.
+     * Calls after the first do nothing, the manager must not be used
+     * once closed.
+     */
+    @Override
+    public void close() {
+        if (closed.getAndSet(true)) {
+            return;
+        }
+        flush();
+        reportWriter.close();
+        events.close();
+        if (queryPool != null) {
+            queryPool.shutdown();
+        }
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, "Error closing journal " + e.getMessage());
+            }
+        }
+        try {
+            reviewStore.close();
+        } catch (IOException | UncheckedIOException e) {
+            logger.log(Level.SEVERE, "Error closing review store " + e.getMessage());
+        }
+        if (metricsName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(metricsName);
+            } catch (JMException e) {
+                logger.log(Level.WARNING, "Error unregistering metrics " + e.getMessage());
+            }
+        }
+    }
+
+    public MetricsSnapshot getMetrics() {
+        return metrics.snapshot();
     }
 
-    private ProductManager() {
-        loadAllData();
+    /**
+     * Catalog changes in batches, see {@link ProductEvent}. Subscribers are
+     * called on their own threads and never slow down the writers, one that
+     * falls behind loses events, counted as {@code events.dropped}.
+     */
+    public Flow.Publisher<List<ProductEvent>> getEvents() {
+        return events.getPublisher();
     }
 
     public static Set<String> getSupportedFormat() {
         return formatters.keySet();
     }
 
+    /**
+     * @throws UncheckedIOException when {@code journal.enabled} is set and
+     * the product could not be journaled, see {@link #reviewProduct}
+     */
     public Product createProduct(int id, String name, BigDecimal price, Rating rating, LocalDate bestBefore) {
         Product product;
         try {
-            writeLock.lock();
-            product = new Food(id, name, price, rating, bestBefore);
-            products.putIfAbsent(product, new ArrayList<Review>());
+            product = new Food(id, Objects.requireNonNull(name, "name"), price, Objects.requireNonNull(rating, "rating"),
+                    Objects.requireNonNull(bestBefore, "best before"));
         } catch (Exception e) {
             logger.log(Level.WARNING, "Error adding product. " + e.getMessage());
             return null;
-        } finally {
-            writeLock.unlock();
         }
-        return product;
+        return create(product);
     }
 
+    /**
+     * @throws UncheckedIOException when {@code journal.enabled} is set and
+     * the product could not be journaled, see {@link #reviewProduct}
+     */
     public Product createProduct(int id, String name, BigDecimal price, Rating rating) {
         Product product;
         try {
-            writeLock.lock();
-            product = new Drink(id, name, price, rating);
-            products.putIfAbsent(product, new ArrayList<Review>());
+            product = new Drink(id, Objects.requireNonNull(name, "name"), price, Objects.requireNonNull(rating, "rating"));
         } catch (Exception e) {
             logger.log(Level.WARNING, "Error adding product. " + e.getMessage());
             return null;
+        }
+        return create(product);
+    }
+
+    /**
+     * Adds a valid product. Its journal record is encoded before the
+     * product is stored, so a product that cannot be journaled is not
+     * kept either.
+     */
+    private Product create(Product product) {
+        int id = product.getId();
+        ByteBuffer journalRecord = (journal == null) ? null : Journal.productCreated(product);
+        ProductRecord added = null;
+        long sequence = 0;
+        fault(id);
+        Lock writeLock = products.writeLock(id);
+        try {
+            writeLock.lock();
+            if (lockedRecord(id, writeLock) == null) {
+                if (journalRecord != null) {
+                    sequence = journal(journalRecord);
+                }
+                added = products.newRecord(product, List.of());
+                products.putIfAbsent(added);
+            }
         } finally {
             writeLock.unlock();
         }
+        sync(sequence);
+        if (added != null && lazy != null) {
+            lazy.created(id);
+            admit(added, id);
+        }
         return product;
     }
 
+    /**
+     * With {@code journal.enabled} the review is durable when this returns.
+     *
+     * @throws UncheckedIOException when the journal failed. If the review
+     * was queued but not written it stays applied and is written by the
+     * next sync that succeeds, if it was not queued nothing changed.
+     */
     public Product reviewProduct(int id, Rating rating, String comments) {
+        long start = metrics.now();
+        try {
+            return review(id, rating, comments);
+        } finally {
+            metrics.reviewProduct.recordSince(start);
+        }
+    }
+
+    private Product review(int id, Rating rating, String comments) {
+        Product product;
+        long sequence;
+        fault(id);
+        Lock writeLock = products.writeLock(id);
         try {
             writeLock.lock();
-            return reviewProduct(findProduct(id), rating, comments);
+            ProductRecord record = findRecord(id, writeLock);
+            sequence = journal(Journal.productReviewed(id, rating, comments));
+            product = products.addReview(record, new Review(rating, comments));
         } catch (ProductManagerException e) {
             logger.log(Level.INFO, e.getMessage());
+            return null;
         } finally {
             writeLock.unlock();
         }
-        return null;
+        sync(sequence);
+        return product;
     }
 
-    private Product reviewProduct(Product product, Rating rating, String comments) {
-        List<Review> reviews = products.get(product);
+    /**
+     * Adds many reviews at once. Reviews are grouped by product, each
+     * product is write locked once, gets all its reviews and is re-rated
+     * once, and the journal is synced once for the whole batch.
+     *
+     * @return the product after the batch for each review, in iteration
+     * order, null for reviews of products that do not exist
+     */
+    public List<Product> reviewProducts(Collection<ProductReview> reviews) {
+        long start = metrics.nowAlways();
+        ProductReview[] items = reviews.toArray(new ProductReview[0]);
+        // id in the high half, position in the low half: sorting groups reviews by product and keeps their order
+        long[] order = new long[items.length];
+        for (int i = 0; i < items.length; i++) {
+            order[i] = (long) items[i].getProductId() << 32 | i;
+        }
+        Arrays.sort(order);
+        Product[] results = new Product[items.length];
+        long sequence = 0;
+        List<Review> group = new ArrayList<>();
+        for (int from = 0, to; from < order.length; from = to) {
+            int id = (int) (order[from] >> 32);
+            to = from + 1;
+            while (to < order.length && (int) (order[to] >> 32) == id) {
+                to++;
+            }
+            group.clear();
+            for (int i = from; i < to; i++) {
+                ProductReview item = items[(int) order[i]];
+                group.add(new Review(item.getRating(), item.getComments()));
+            }
+            Product product;
+            fault(id);
+            Lock writeLock = products.writeLock(id);
+            try {
+                writeLock.lock();
+                ProductRecord record = findRecord(id, writeLock);
+                if (journal != null) {
+                    ByteBuffer[] journalRecords = new ByteBuffer[group.size()];
+                    for (int i = 0; i < journalRecords.length; i++) {
+                        journalRecords[i] = Journal.productReviewed(id, group.get(i).getRating(),
+                                group.get(i).getComments());
+                    }
+                    sequence = journal(journalRecords);
+                }
+                product = products.addReviews(record, group);
+            } catch (ProductManagerException e) {
+                logger.log(Level.INFO, e.getMessage());
+                product = null;
+            } finally {
+                writeLock.unlock();
+            }
+            for (int i = from; i < to; i++) {
+                results[(int) order[i]] = product;
+            }
+        }
+        sync(sequence);
+        metrics.reviewProducts.recordSince(start);
+        return Arrays.asList(results);
+    }
 
-        products.remove(product);
-        reviews.add(new Review(rating, comments));
-        product = product.applyRating(
-                (int) Math.round(reviews.stream()
-                        .mapToInt(x -> x.getRating().ordinal())
-                        .average()
-                        .orElse(0)));
-        this.products.put(product, reviews);
-        return product;
+    /**
+     * Queues journal records under the product's write lock, before the
+     * change is applied, so a failed journal leaves the product unchanged.
+     */
+    private long journal(ByteBuffer... records) {
+        if (journal == null) {
+            return 0;
+        }
+        try {
+            return journal.append(records);
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Error journal " + e.getMessage());
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void sync(long sequence) {
+        if (sequence > 0) {
+            try {
+                journal.sync(sequence);
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, "Error journal sync " + e.getMessage());
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private Journal recover(Journal.SyncMode mode) {
+        try {
+            Files.createDirectories(tempFolder);
+            Map.Entry<Long, Path> snapshot = Journal.list(tempFolder, true).lastEntry();
+            long generation = 0;
+            if (snapshot == null) {
+                loadData();
+            } else {
+                products.replaceAll(SnapshotFormat.read(snapshot.getValue()));
+                generation = snapshot.getKey();
+            }
+            Journal.Replay replay = new Journal.Replay() {
+                @Override
+                public void created(Product product) {
+                    addRecord(products.newRecord(product, List.of()));
+                }
+
+                @Override
+                public void reviewed(int id, Rating rating, String comments) {
+                    Lock writeLock = products.writeLock(id);
+                    try {
+                        writeLock.lock();
+                        products.addReview(findRecord(id), new Review(rating, comments));
+                    } catch (ProductManagerException e) {
+                        logger.log(Level.WARNING, "Error journal replay " + e.getMessage());
+                    } finally {
+                        writeLock.unlock();
+                    }
+                }
+            };
+            long records = 0;
+            for (Map.Entry<Long, Path> file : Journal.list(tempFolder, false).tailMap(generation).entrySet()) {
+                records += Journal.replay(file.getValue(), replay);
+                generation = file.getKey();
+            }
+            logger.log(Level.INFO, "Replayed " + records + " journal records");
+            return new Journal(tempFolder, mode, generation);
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Error opening journal, changes will not be journaled " + e.getMessage());
+            return null;
+        } catch (ProductManagerException e) {
+            // the journal files stay as they are for inspection, nothing is appended to or compacted into them
+            logger.log(Level.SEVERE, "Error journal recovery, changes will not be journaled " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Writes the current state as a new snapshot and drops the journal
+     * files it covers.
+     */
+    public void compact() {
+        if (journal == null) {
+            return;
+        }
+        try {
+            long[] generation = new long[1];
+            Map<Product, List<Review>> state = products.toMap(() -> {
+                try {
+                    generation[0] = journal.rotate();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            Path snapshot = tempFolder.resolve("snapshot.new");
+            SnapshotFormat.write(snapshot, state);
+            Files.move(snapshot, Journal.snapshotFile(tempFolder, generation[0]), StandardCopyOption.ATOMIC_MOVE);
+            for (Path file : Journal.list(tempFolder, false).headMap(generation[0]).values()) {
+                Files.delete(file);
+            }
+            for (Path file : Journal.list(tempFolder, true).headMap(generation[0]).values()) {
+                Files.delete(file);
+            }
+        } catch (IOException | UncheckedIOException e) {
+            logger.log(Level.SEVERE, "Error compact " + e.getMessage());
+        }
     }
 
     private void dumpData() {
+        long start = metrics.nowAlways();
         try {
             if (Files.notExists(tempFolder)) {
                 Files.createDirectory(tempFolder); //why not -ies?
             }
             Path tempFile = tempFolder.resolve(
                     MessageFormat.format(config.getString("temp.file"), Instant.now()));
-            try (ObjectOutputStream out = new ObjectOutputStream(
-                    Files.newOutputStream(tempFile, StandardOpenOption.CREATE))) {
-                out.writeObject(products);
-                products = new HashMap<>();
-            }
+            SnapshotFormat.write(tempFile, products.toMap());
+            products.clear();
         } catch (Exception e) {
             logger.log(Level.SEVERE, "Error dump  " + e.getMessage());
+        } finally {
+            metrics.dump.recordSince(start);
         }
     }
 
-    @SuppressWarnings("unchecked")
     private void restoreData() {
+        long start = metrics.nowAlways();
         try {
-            Path tempFile = Files.list(tempFolder)
-                    .filter(path -> path.getFileName().toString().endsWith("tmp"))
-                    .findFirst()
-                    .orElseThrow();
-            try (ObjectInputStream in = new ObjectInputStream(
-                    Files.newInputStream(tempFile, StandardOpenOption.DELETE_ON_CLOSE))) {
-                products = (HashMap) in.readObject();
+            Path tempFile;
+            try (Stream<Path> files = Files.list(tempFolder)) {
+                tempFile = files.filter(path -> path.getFileName().toString().endsWith("tmp"))
+                        .findFirst()
+                        .orElseThrow();
             }
+            products.replaceAll(SnapshotFormat.read(tempFile));
+            Files.delete(tempFile);
+            flushReviews();
         } catch (Exception e) {
             logger.log(Level.SEVERE, "Error dump  " + e.getMessage());
+        } finally {
+            metrics.restore.recordSince(start);
+        }
+    }
+
+    private ReviewStore createReviewStore() {
+        if ("mapped".equals(config.getString("review.store"))) {
+            try {
+                Files.createDirectories(tempFolder);
+                return new MappedReviewStore(tempFolder.resolve("reviews.store"),
+                        Integer.parseInt(config.getString("review.buffer.size")));
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, "Error opening review store, keeping reviews on heap " + e.getMessage());
+            }
+        }
+        if ("compact".equals(config.getString("review.store"))) {
+            return new CompactReviewStore();
         }
+        return new HeapReviewStore();
+    }
 
+    void loadAllData() {
+        flush();
+        products.clear();
+        loadProgress = new LoadProgress();
+        loadData();
     }
 
-    private void loadAllData() {
+    private void loadData() {
+        long start = metrics.nowAlways();
+        if (lazy != null) {
+            indexData();
+        } else {
+            new DataLoader(loadThreads, logger).load(dataFolder, "product*", this::isOwnFile, this::loadRecord,
+                    this::addRecord, loadProgress);
+        }
+        flushReviews();
+        metrics.load.recordSince(start);
+    }
+
+    private void flushReviews() {
         try {
-            products = Files.list(dataFolder)
-                    .filter(file -> file.getFileName().toString().startsWith("product"))
-                    .map(file -> loadProduct(file))
-                    .filter(product -> product != null)
-                    .collect(Collectors.toMap(product -> product, product -> loadReviews(product)));
+            reviewStore.flush();
+        } catch (IOException | UncheckedIOException e) {
+            logger.log(Level.SEVERE, "Error flushing reviews " + e.getMessage());
+        }
+    }
+
+    /**
+     * Lists the data folder instead of loading it. Only product files not
+     * named after their id are loaded now, they could not be found later.
+     */
+    private void indexData() {
+        try {
+            List<Path> unnamed = lazy.index("product*", this::isOwnFile);
+            for (Path file : unnamed) {
+                ProductRecord record = loadRecord(file);
+                if (record != null) {
+                    record.persisted();
+                    addRecord(record);
+                }
+            }
+            logger.log(Level.INFO, "Indexed " + lazy.getKnownCount() + " product files, loaded " + unnamed.size());
         } catch (IOException e) {
-            logger.log(Level.SEVERE, "Error load  " + e.getMessage());
+            logger.log(Level.SEVERE, "Error indexing " + e.getMessage());
+        }
+        loadProgress.finish();
+    }
+
+    /**
+     * Loads a product of a lazy catalog on first access. The file is read
+     * under the stripe write lock, so a load never races with the write
+     * back of the same product.
+     */
+    private void fault(int id) {
+        if (lazy == null) {
+            return;
+        }
+        Lock readLock = products.readLock(id);
+        try {
+            readLock.lock();
+            ProductRecord record = products.get(id);
+            if (record != null) {
+                lazy.touch(record);
+                return;
+            }
+        } finally {
+            readLock.unlock();
+        }
+        if (!lazy.isKnown(id)) {
+            return;
+        }
+        ProductRecord loaded = null;
+        Lock writeLock = products.writeLock(id);
+        try {
+            writeLock.lock();
+            if (products.get(id) == null) {
+                ProductRecord record = loadRecord(lazy.productFile(id));
+                if (record != null) {
+                    record.persisted();
+                    products.load(record);
+                    loaded = record;
+                }
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        if (loaded != null) {
+            admit(loaded, id);
+        }
+    }
+
+    private void admit(ProductRecord record, int id) {
+        int victim = lazy.admit(record, id);
+        if (victim != LazyCatalog.NO_VICTIM) {
+            evict(victim);
+        }
+    }
+
+    private void evict(int id) {
+        Lock writeLock = products.writeLock(id);
+        ProductRecord record = null;
+        try {
+            writeLock.lock();
+            record = products.get(id);
+            if (record != null) {
+                if (record.isDirty()) {
+                    lazy.writeBack(record);
+                }
+                products.remove(id);
+            }
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Error writing back product " + id + ", keeping it loaded " + e.getMessage());
+            lazy.readmit(record, id);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Moves reviews the review store still buffers on the heap into the
+     * store, and writes the changes of loaded products to the data files
+     * when {@code load.lazy} is set, lazy catalogs keep changes nowhere else.
+     * Catalog wide queries and discounts of a lazy catalog cover only
+     * the products loaded at the time.
+     */
+    public void flush() {
+        flushReviews();
+        if (lazy == null) {
+            return;
+        }
+        for (int id : lazy.resident()) {
+            Lock writeLock = products.writeLock(id);
+            try {
+                writeLock.lock();
+                ProductRecord record = products.get(id);
+                if (record != null && record.isDirty()) {
+                    lazy.writeBack(record);
+                }
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, "Error writing back product " + id + " " + e.getMessage());
+            } finally {
+                writeLock.unlock();
+            }
+        }
+    }
+
+    public LoadProgress getLoadProgress() {
+        return loadProgress;
+    }
+
+    /**
+     * @return false for the product files of other partitions
+     */
+    private boolean isOwnFile(Path file) {
+        if (partitions == 1) {
+            return true;
+        }
+        try {
+            Object[] arguments = new MessageFormat(config.getString("product.data.file"))
+                    .parse(file.getFileName().toString());
+            return PartitionedProductManager.partitionOf(Integer.parseInt(arguments[0].toString()), partitions)
+                    == partition;
+        } catch (ParseException | NumberFormatException e) {
+            // not named after an id, the product line decides
+            return true;
+        }
+    }
+
+    private ProductRecord loadRecord(Path file) {
+        Product product = loadProduct(file);
+        if (product != null && partitions > 1
+                && PartitionedProductManager.partitionOf(product.getId(), partitions) != partition) {
+            return null;
+        }
+        return (product == null) ? null : products.newRecord(product, loadReviews(product));
+    }
+
+    private void addRecord(ProductRecord record) {
+        Lock writeLock = products.writeLock(record.getProduct().getId());
+        try {
+            writeLock.lock();
+            products.load(record);
+        } finally {
+            writeLock.unlock();
         }
     }
 
     private Product loadProduct(Path file) {
         Product product = null;
-        try {
-            product = parseProduct(Files.lines(dataFolder.resolve(file), Charset.forName("UTF-8"))
-                    .findFirst()
-                    .orElseThrow());
+        try (BufferedReader in = Files.newBufferedReader(dataFolder.resolve(file), StandardCharsets.UTF_8)) {
+            String text = in.readLine();
+            if (text == null) {
+                logger.log(Level.WARNING, "Error load product " + file + " is empty");
+            } else {
+                product = parseProduct(file, text);
+            }
         } catch (IOException e) {
             logger.log(Level.WARNING, "Error load product " + e.getMessage());
         }
@@ -170,16 +846,20 @@ public class ProductManager {
     }
 
     private List<Review> loadReviews(Product product) {
-        List<Review> reviews = null;
-        Path file = dataFolder.resolve(MessageFormat.format(config.getString("reviews.data.file"), product.getId()));
-        if (Files.notExists(file)) {
-            reviews = new ArrayList<>();
-        } else {
-            try {
-                reviews = Files.lines(file, Charset.forName("UTF-8"))
-                        .map(text -> parseReview(text))
-                        .filter(review -> review != null)
-                        .collect(Collectors.toList());
+        List<Review> reviews = new ArrayList<>();
+        // ids as plain digits, a number argument would be formatted with grouping separators
+        Path file = dataFolder.resolve(MessageFormat.format(config.getString("reviews.data.file"),
+                Integer.toString(product.getId())));
+        if (Files.exists(file)) {
+            try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                RowFormat.Row row = reviewFormat.newRow();
+                int line = 0;
+                for (String text = in.readLine(); text != null; text = in.readLine()) {
+                    Review review = parseReview(file, row, text, ++line);
+                    if (review != null) {
+                        reviews.add(review);
+                    }
+                }
             } catch (IOException e) {
                 logger.log(Level.WARNING, "Error load reviews " + e.getMessage());
             }
@@ -187,154 +867,320 @@ public class ProductManager {
         return reviews;
     }
 
-    private Review parseReview(String text) {
+    private Review parseReview(Path file, RowFormat.Row row, String text, int line) {
         Review review = null;
         try {
-            Object[] values = reviewFormat.parse(text);
-            review = new Review(Rateable.convert(Integer.parseInt(String.valueOf(values[0]))),
-                    String.valueOf(values[1]));
-        } catch (ParseException | NumberFormatException e) {
-            e.printStackTrace();
+            row.reset(text, line);
+            review = new Review(Rateable.convert(row.getInt(0)), row.getString(1));
+        } catch (ParseException e) {
+            metrics.parseErrors.increment();
+            logger.log(Level.WARNING, "Malformed review in " + file + " " + e.getMessage());
         }
         return review;
     }
 
-    private Product parseProduct(String text) {
+    private Product parseProduct(Path file, String text) {
         Product product = null;
         try {
-            Object[] values = productFormat.parse(text);
-            int id = Integer.parseInt((String) values[1]);
-            String name = (String) values[2];
-            BigDecimal price = BigDecimal.valueOf(Double.parseDouble((String) values[3]));
-            Rating rating = Rateable.convert(Integer.parseInt((String) values[4]));
-            switch ((String) values[0]) {
-                case "D":
+            RowFormat.Row row = productFormat.newRow();
+            row.reset(text, 1);
+            int id = row.getInt(1);
+            String name = row.getString(2);
+            BigDecimal price = row.getDecimal(3);
+            Rating rating = Rateable.convert(row.getInt(4));
+            switch (row.getChar(0)) {
+                case 'D':
                     product = new Drink(id, name, price, rating);
                     break;
-                case "F":
-                    LocalDate bestBefore = LocalDate.parse((String) values[5]);
-                    product = new Food(id, name, price, rating, bestBefore);
+                case 'F':
+                    product = new Food(id, name, price, rating, row.getDate(5));
                     break;
+                default:
+                    metrics.parseErrors.increment();
+                    logger.log(Level.WARNING, "Malformed product in " + file + " line 1: unknown type " + row.getChar(0));
             }
-        } catch (ParseException | NumberFormatException | DateTimeParseException e) {
-            e.printStackTrace();
+        } catch (ParseException e) {
+            metrics.parseErrors.increment();
+            logger.log(Level.WARNING, "Malformed product in " + file + " " + e.getMessage());
         }
         return product;
     }
 
-    private void printProductReport(Product product, String languageTag, String client) throws IOException {
-        ResourceFormatter formatter = formatters.getOrDefault(languageTag, formatters.get("ru-RU"));
-        List<Review> reviews = products.get(product);
-        Path productFile = reportFolder.resolve(MessageFormat.format(config.getString("report.file"), product.getId(), client));
-        try (PrintWriter out = new PrintWriter(
-                new OutputStreamWriter(
-                        Files.newOutputStream(productFile, StandardOpenOption.CREATE),
-                        "UTF-8"))) {
-            out.append(formatter.formatProduct(product) + System.lineSeparator());
-            if (reviews.isEmpty()) {
-                out.append(formatter.getText("no.reviews") + System.lineSeparator());
-            } else {
-                out.append(reviews.stream()
-                        .map(x -> formatter.formatReview(x) + System.lineSeparator())
-                        .collect(Collectors.joining()));
+    private String renderReport(Product product, List<Review> reviews, ResourceFormatter formatter) throws IOException {
+        StringBuilder out = new StringBuilder();
+        formatter.formatProduct(product, out);
+        out.append(System.lineSeparator());
+        if (reviews.isEmpty()) {
+            out.append(formatter.getText("no.reviews")).append(System.lineSeparator());
+        } else {
+            for (Review review : reviews) {
+                formatter.formatReview(review, out);
+                out.append(System.lineSeparator());
             }
         }
+        return out.toString();
+    }
+
+    /**
+     * Writes the report next to its file and moves it into place, so a
+     * reader never sees a partly written report or the tail of a longer
+     * previous one.
+     */
+    private Path writeReport(int id, String client, String report) throws IOException {
+        Path productFile = reportFolder.resolve(MessageFormat.format(config.getString("report.file"),
+                Integer.toString(id), client));
+        Path tempFile = Files.createTempFile(reportFolder, productFile.getFileName().toString(), ".tmp");
+        try {
+            try (PrintWriter out = new PrintWriter(
+                    new OutputStreamWriter(
+                            Files.newOutputStream(tempFile, StandardOpenOption.TRUNCATE_EXISTING),
+                            "UTF-8"))) {
+                out.append(report);
+            }
+            Files.move(tempFile, productFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+        return productFile;
     }
 
     public void printProductReport(int id, String languageTag, String client) {
+        try {
+            printProductReportAsync(id, languageTag, client).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof ProductManagerException) {
+                logger.log(Level.INFO, e.getCause().getMessage());
+            } else {
+                logger.log(Level.SEVERE, e.getCause().getMessage());
+            }
+        }
+    }
+
+    /**
+     * Takes a snapshot of the product and its reviews and writes the report
+     * on the report writer threads. Rendered reports are cached by product
+     * version and language, a cached one is only written to the client's file.
+     *
+     * @return completes with the report file, or with the
+     * ProductManagerException or IOException that stopped it
+     */
+    public CompletableFuture<Path> printProductReportAsync(int id, String languageTag, String client) {
+        String supportedTag = formatters.containsKey(languageTag) ? languageTag : "ru-RU";
+        long start = metrics.nowAlways();
+        Product product;
+        List<Review> reviews = null;
+        String cacheKey;
+        String cached;
+        fault(id);
+        Lock readLock = products.readLock(id);
         try {
             readLock.lock();
-            printProductReport(findProduct(id), languageTag, client);
+            ProductRecord record = findRecord(id, readLock);
+            product = record.getProduct();
+            cacheKey = id + "/" + record.getVersion() + "/" + supportedTag + "/" + LocalDate.now();
+            cached = reportCache.get(cacheKey);
+            if (cached == null) {
+                reviews = record.copyReviews();
+            }
         } catch (ProductManagerException e) {
-            logger.log(Level.INFO, e.getMessage());
-        } catch (IOException e) {
-            logger.log(Level.SEVERE, e.getMessage());
+            return CompletableFuture.failedFuture(e);
         } finally {
             readLock.unlock();
         }
+        List<Review> snapshot = reviews;
+        CompletableFuture<Path> result = reportWriter.submit(id + "/" + supportedTag + "/" + client, () -> {
+            String report = cached;
+            if (report == null) {
+                report = renderReport(product, snapshot, formatters.get(supportedTag));
+                reportCache.put(cacheKey, report);
+            }
+            return writeReport(id, client, report);
+        });
+        result.whenComplete((path, e) -> metrics.printProductReport.recordSince(start));
+        return result;
+    }
+
+    public CacheStatistics getReportCacheStatistics() {
+        return reportCache.getStatistics();
     }
 
     public void printProducts(Predicate<Product> filter, Comparator<Product> sorter, String languageTag) {
         try {
-            readLock.lock();
-            ResourceFormatter formatter = formatters.getOrDefault(languageTag, formatters.get("ru-RU"));
-            StringBuilder txt = new StringBuilder();
-            txt.append(
-                    products.keySet().stream()
-                            .filter(filter)
-                            .sorted(sorter)
-                            .map(x -> formatter.formatProduct(x))
-                            .collect(Collectors.joining("\n"))
-            );
-            System.out.println(txt);
-        } finally {
-            readLock.unlock();
+            printProducts(filter, sorter, Integer.MAX_VALUE, languageTag, System.out);
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Error printing products " + e.getMessage());
         }
     }
 
-    public Product findProduct(int id) throws ProductManagerException {
-        try {
-            readLock.lock();
-            return products.keySet()
-                    .stream()
-                    .filter(product -> product.getId() == id)
-                    .findFirst()
-                    .orElseThrow(() -> new ProductManagerException("Product with id " + id + " not found!"));
-        } finally {
-            readLock.unlock();
+    /**
+     * Writes the first {@code limit} matching products to {@code out},
+     * separated by new lines.
+     */
+    public void printProducts(Predicate<Product> filter, Comparator<Product> sorter, int limit,
+                              String languageTag, Appendable out) throws IOException {
+        ResourceFormatter formatter = getFormatter(languageTag);
+        List<Product> result = findProducts(filter, sorter, limit);
+        for (int i = 0; i < result.size(); i++) {
+            if (i > 0) {
+                out.append('\n');
+            }
+            formatter.formatProduct(result.get(i), out);
+        }
+        out.append(System.lineSeparator());
+    }
+
+    /**
+     * @return the first {@code limit} matching products in sort order, ties
+     * broken by id, found without sorting or copying the whole catalog
+     */
+    public List<Product> findProducts(Predicate<Product> filter, Comparator<Product> sorter, int limit) {
+        return select(filter, sorter.thenComparingInt(Product::getId), limit);
+    }
 
+    /**
+     * Returns matching products in pages. Products that compare equal are
+     * ordered by id, so every product has one place in the order.
+     *
+     * @param after the cursor of the previous page, null for the first page
+     * @param pageSize at least 1, sizes above {@link ProductPage#MAX_SIZE} are taken as that
+     */
+    public ProductPage findProducts(Predicate<Product> filter, Comparator<Product> sorter,
+                                    ProductPage.Cursor after, int pageSize) {
+        pageSize = pageSize(pageSize);
+        Comparator<Product> order = sorter.thenComparingInt(Product::getId);
+        Product last = (after == null) ? null : after.getLast();
+        Predicate<Product> afterLast = (last == null) ? filter : filter.and(product -> order.compare(product, last) > 0);
+        List<Product> page = select(afterLast, order, pageSize + 1);
+        if (page.size() <= pageSize) {
+            return new ProductPage(page, null);
         }
+        page = page.subList(0, pageSize);
+        return new ProductPage(page, new ProductPage.Cursor(page.get(pageSize - 1)));
     }
 
-    public Map<String, String> getDiscounts(String languageTag) {
+    /**
+     * @return the page size clamped to {@link ProductPage#MAX_SIZE}, so one more product can be looked ahead
+     */
+    static int pageSize(int pageSize) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Page size must be positive " + pageSize);
+        }
+        return Math.min(pageSize, ProductPage.MAX_SIZE);
+    }
+
+    /**
+     * Selects the first matching products. A {@link ProductFilter} reads
+     * candidates from the most selective index, or tests its conditions on
+     * the columns of the columnar layout, other predicates scan the
+     * catalog, on the query pool when {@code query.parallelism} is set,
+     * in which case the predicate is tested from several threads at once.
+     */
+    private List<Product> select(Predicate<Product> filter, Comparator<Product> order, int limit) {
+        List<Product> candidates = (index != null && filter instanceof ProductFilter)
+                ? index.candidates((ProductFilter) filter)
+                : null;
+        TopN<Product> top;
+        if (candidates != null) {
+            top = new TopN<>(order, limit);
+            for (Product product : candidates) {
+                if (filter.test(product)) {
+                    top.offer(product);
+                }
+            }
+        } else if (queryPool != null) {
+            top = products.reduce(queryPool, filter, () -> new TopN<>(order, limit), TopN::offer, TopN::addAll);
+        } else {
+            top = new TopN<>(order, limit);
+            products.forEach(filter, top::offer);
+        }
+        return top.toList();
+    }
+
+    public Product findProduct(int id) throws ProductManagerException {
+        long start = metrics.now();
+        fault(id);
+        Lock readLock = products.readLock(id);
         try {
             readLock.lock();
-            ResourceFormatter formatter = formatters.getOrDefault(languageTag, formatters.get("ru-RU"));
-            return products.keySet().stream()
-                    .collect(
-                            Collectors.groupingBy(
-                                    product -> product.getRating().getStars(),
-                                    Collectors.collectingAndThen(
-                                            Collectors.summingDouble(
-                                                    product -> product.getDiscount().doubleValue()),
-                                            discount -> formatter.moneyFormat.format(discount)
-                                    )
-                            )
-                    );
+            return findRecord(id, readLock).getProduct();
         } finally {
             readLock.unlock();
+            metrics.findProduct.recordSince(start);
         }
     }
 
-    private static class ResourceFormatter {
-        private final Locale locale;
-        private final ResourceBundle resources;
-        private final DateTimeFormatter dateFormat;
-        private final NumberFormat moneyFormat;
+    private ProductRecord findRecord(int id) throws ProductManagerException {
+        ProductRecord record = products.get(id);
+        if (record == null) {
+            throw new ProductManagerException("Product with id " + id + " not found!");
+        }
+        return record;
+    }
 
-        public ResourceFormatter(Locale locale) {
-            this.locale = locale;
-            resources = ResourceBundle.getBundle("resources", locale);
-            dateFormat = DateTimeFormatter.ofLocalizedDate(FormatStyle.SHORT).localizedBy(locale);
-            moneyFormat = NumberFormat.getCurrencyInstance(locale);
+    /**
+     * @param lock the product's stripe lock, held by the caller
+     */
+    private ProductRecord findRecord(int id, Lock lock) throws ProductManagerException {
+        ProductRecord record = lockedRecord(id, lock);
+        if (record == null) {
+            throw new ProductManagerException("Product with id " + id + " not found!");
         }
+        return record;
+    }
 
-        public String formatProduct(Product product) {
-            return MessageFormat.format(resources.getString("product"),
-                    product.getName(),
-                    moneyFormat.format(product.getPrice()),
-                    product.getRating().getStars(),
-                    dateFormat.format(product.getBestBefore()));
+    /**
+     * In a lazy catalog the product faulted in before the caller took the
+     * stripe lock may have been evicted meanwhile by another thread, it is
+     * then faulted in again, without the lock, until it stays. The lock is
+     * held again whenever this returns.
+     *
+     * @param lock the product's stripe lock, held by the caller
+     * @return the record, or null when the product does not exist
+     */
+    private ProductRecord lockedRecord(int id, Lock lock) {
+        ProductRecord record = products.get(id);
+        while (record == null && lazy != null && lazy.isKnown(id)) {
+            lock.unlock();
+            try {
+                fault(id);
+            } finally {
+                lock.lock();
+            }
+            record = products.get(id);
         }
+        return record;
+    }
 
-        public String formatReview(Review review) {
-            return MessageFormat.format(resources.getString("review"),
-                    review.getRating().getStars(),
-                    review.getComments());
+    public RatingSummary getRatingSummary(int id) throws ProductManagerException {
+        fault(id);
+        Lock readLock = products.readLock(id);
+        try {
+            readLock.lock();
+            return findRecord(id, readLock).getAggregate().toSummary();
+        } finally {
+            readLock.unlock();
         }
+    }
+
+    static ResourceFormatter getFormatter(String languageTag) {
+        return formatters.getOrDefault(languageTag, formatters.get("ru-RU"));
+    }
+
+    /**
+     * @return exact discount totals by rating, for ratings that have products
+     */
+    Map<Rating, BigDecimal> getDiscountTotals(LocalDate today, boolean happyHour) {
+        return discounts.getTotals(today, happyHour);
+    }
 
-        public String getText(String key) {
-            return resources.getString(key);
+    public Map<String, String> getDiscounts(String languageTag) {
+        String supportedTag = formatters.containsKey(languageTag) ? languageTag : "ru-RU";
+        ResourceFormatter formatter = formatters.get(supportedTag);
+        long start = metrics.now();
+        try {
+            return discounts.getDiscounts(supportedTag, formatter::formatMoney);
+        } finally {
+            metrics.getDiscounts.recordSince(start);
         }
     }
 }
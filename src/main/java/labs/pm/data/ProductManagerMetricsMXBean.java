@@ -0,0 +1,13 @@
+package labs.pm.data;
+
+import java.util.Map;
+
+/**
+ * JMX view of a ProductManager's metrics, registered as
+ * {@code labs.pm.data:type=ProductManager,instance=<n>}.
+ */
+public interface ProductManagerMetricsMXBean {
+    Map<String, LatencySnapshot> getLatencies();
+
+    Map<String, Long> getCounters();
+}
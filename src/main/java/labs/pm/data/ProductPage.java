@@ -0,0 +1,59 @@
+package labs.pm.data;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One page of a product query. Pages are cut by the position of the last
+ * product in sort order, not by offset, so products added or re-rated
+ * between two calls do not shift the other products of the following
+ * pages. A product whose sort key changed between calls shows up where it
+ * sorts now: it is repeated when it moved past the cursor, and skipped
+ * when it moved before it.
+ */
+public class ProductPage {
+    /**
+     * Largest page size, one less than the int range so queries can look
+     * one product past the page.
+     */
+    public static final int MAX_SIZE = Integer.MAX_VALUE - 1;
+
+    private final List<Product> products;
+    private final Cursor next;
+
+    ProductPage(List<Product> products, Cursor next) {
+        this.products = Collections.unmodifiableList(products);
+        this.next = next;
+    }
+
+    public List<Product> getProducts() {
+        return products;
+    }
+
+    public boolean hasNext() {
+        return next != null;
+    }
+
+    /**
+     * @return where the next page starts, or null after the last page
+     */
+    public Cursor getNext() {
+        return next;
+    }
+
+    /**
+     * Position after a product in the order of the query that returned it.
+     * Only valid with the same sort order.
+     */
+    public static class Cursor {
+        private final Product last;
+
+        Cursor(Product last) {
+            this.last = last;
+        }
+
+        Product getLast() {
+            return last;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package labs.pm.data;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Current product snapshot with its reviews and rating aggregate.
+ * Guarded by the lock of the {@link ProductStore} stripe that owns it.
+ * A record bound to {@link ProductColumns} keeps the product only as a
+ * row of the columns and creates it when asked for.
+ * In a lazy catalog the record also knows what its data files lack.
+ */
+class ProductRecord {
+    private static final AtomicLong versions = new AtomicLong();
+    private Product product;
+    private ProductColumns columns;
+    private int row;
+    private long version = versions.incrementAndGet();
+    private boolean productChanged = true;
+    private int persistedReviews;
+    private volatile int slot = -1;
+    private final ReviewStore.Reviews reviews;
+    private final RatingAggregate aggregate;
+
+    ProductRecord(Product product, List<Review> reviews, ReviewStore reviewStore) {
+        this.product = product;
+        this.reviews = reviewStore.create(product.getId(), reviews);
+        this.aggregate = RatingAggregate.of(reviews);
+    }
+
+    Product getProduct() {
+        return (columns == null) ? product : columns.get(row);
+    }
+
+    int getId() {
+        return (columns == null) ? product.getId() : columns.getId(row);
+    }
+
+    /**
+     * Moves the product into the columns, the record drops its own reference.
+     */
+    void bind(ProductColumns columns) {
+        this.row = columns.add(product);
+        this.columns = columns;
+        this.product = null;
+    }
+
+    /**
+     * @return a number unique to this state of the product and its reviews
+     */
+    long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return true when the product line or reviews differ from the data files
+     */
+    boolean isDirty() {
+        return productChanged || persistedReviews < reviews.size();
+    }
+
+    boolean isProductChanged() {
+        return productChanged;
+    }
+
+    /**
+     * @return reviews not yet in the data files
+     */
+    List<Review> copyNewReviews() {
+        List<Review> all = reviews.toList();
+        return all.subList(persistedReviews, all.size());
+    }
+
+    /**
+     * The data files now hold the product and all its reviews.
+     */
+    void persisted() {
+        productChanged = false;
+        persistedReviews = reviews.size();
+    }
+
+    /**
+     * @return the slot of the product in the lazy catalog, -1 when it has none
+     */
+    int getSlot() {
+        return slot;
+    }
+
+    void setSlot(int slot) {
+        this.slot = slot;
+    }
+
+    int getReviewCount() {
+        return reviews.size();
+    }
+
+    List<Review> copyReviews() {
+        return reviews.toList();
+    }
+
+    RatingAggregate getAggregate() {
+        return aggregate;
+    }
+
+    Product addReview(Review review) {
+        return addReviews(List.of(review));
+    }
+
+    /**
+     * Adds the reviews and re-rates the product once for all of them.
+     */
+    Product addReviews(List<Review> added) {
+        for (Review review : added) {
+            reviews.add(review);
+            aggregate.add(review.getRating());
+        }
+        Product previous = getProduct();
+        Product current = previous.applyRating(aggregate.getRoundedMean());
+        productChanged |= current.getRating() != previous.getRating();
+        if (columns == null) {
+            product = current;
+        } else {
+            columns.setRating(row, current.getRating());
+        }
+        version = versions.incrementAndGet();
+        return current;
+    }
+}
@@ -0,0 +1,28 @@
+package labs.pm.data;
+
+import java.util.List;
+
+/**
+ * The whole catalog was replaced, by a restore or a reload, derived views
+ * should start over from these products.
+ */
+public class ProductRestored extends ProductEvent {
+    private final List<Product> products;
+
+    ProductRestored(long sequence, List<Product> products) {
+        super(sequence);
+        this.products = products;
+    }
+
+    public List<Product> getProducts() {
+        return products;
+    }
+
+    @Override
+    public String toString() {
+        return "ProductRestored{" +
+                "sequence=" + getSequence() +
+                ", products=" + products.size() +
+                '}';
+    }
+}
@@ -0,0 +1,37 @@
+package labs.pm.data;
+
+/**
+ * Review of a product, one item of {@link ProductManager#reviewProducts(java.util.Collection)}.
+ */
+public class ProductReview {
+    private final int productId;
+    private final Rating rating;
+    private final String comments;
+
+    public ProductReview(int productId, Rating rating, String comments) {
+        this.productId = productId;
+        this.rating = rating;
+        this.comments = comments;
+    }
+
+    public int getProductId() {
+        return productId;
+    }
+
+    public Rating getRating() {
+        return rating;
+    }
+
+    public String getComments() {
+        return comments;
+    }
+
+    @Override
+    public String toString() {
+        return "ProductReview{" +
+                "productId=" + productId +
+                ", rating=" + rating +
+                ", comments='" + comments + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,36 @@
+package labs.pm.data;
+
+public class ProductReviewed extends ProductEvent {
+    private final Product product;
+    private final Rating previousRating;
+
+    ProductReviewed(long sequence, Product product, Rating previousRating) {
+        super(sequence);
+        this.product = product;
+        this.previousRating = previousRating;
+    }
+
+    /**
+     * @return the product with its new rating
+     */
+    public Product getProduct() {
+        return product;
+    }
+
+    public Rating getPreviousRating() {
+        return previousRating;
+    }
+
+    public Rating getRating() {
+        return product.getRating();
+    }
+
+    @Override
+    public String toString() {
+        return "ProductReviewed{" +
+                "sequence=" + getSequence() +
+                ", product=" + product +
+                ", previousRating=" + previousRating +
+                '}';
+    }
+}
@@ -0,0 +1,371 @@
+package labs.pm.data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Product records split into lock stripes by id, so operations on
+ * products in different stripes do not wait for each other.
+ * Callers take {@link #readLock(int)} or {@link #writeLock(int)} for an id
+ * before calling {@link #get(int)}, {@link #putIfAbsent(ProductRecord)} or {@link #load(ProductRecord)}.
+ * Catalog wide reads lock one stripe at a time.
+ * In the columnar layout each stripe also keeps its products as
+ * {@link ProductColumns} and scans read the columns instead of the records.
+ */
+class ProductStore {
+    private final Stripe[] stripes;
+    private final int shift;
+    private final ReviewStore reviewStore;
+    private final Metrics metrics;
+    private final boolean columnar;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Told about every product change while the product's stripe is write
+     * locked. Calls for different stripes may come from different threads
+     * at the same time.
+     */
+    interface Listener {
+        void added(Product product);
+
+        /**
+         * A product that was already in the catalog was read into the store.
+         */
+        default void loaded(Product product) {
+            added(product);
+        }
+
+        void replaced(Product previous, Product current);
+
+        /**
+         * The product left the store but not the catalog, a lazy catalog evicted it.
+         */
+        void removed(Product product);
+
+        /**
+         * All products were dropped, the new ones follow through {@link #added(Product)}.
+         */
+        void cleared();
+
+        /**
+         * All products were replaced by the given ones, while every stripe
+         * is write locked. The list is unmodifiable and built before the
+         * locks were taken, it can be kept without copying.
+         */
+        default void replacedAll(List<Product> products) {
+            cleared();
+            products.forEach(this::added);
+        }
+    }
+
+    ProductStore(int stripeCount, ReviewStore reviewStore, Metrics metrics, boolean columnar) {
+        this.reviewStore = reviewStore;
+        this.metrics = metrics;
+        this.columnar = columnar;
+        int size = stripeCount <= 1 ? 1 : Integer.highestOneBit(stripeCount - 1) << 1;
+        stripes = new Stripe[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new Stripe(columnar ? new ProductColumns() : null);
+        }
+        shift = 32 - Integer.numberOfTrailingZeros(size);
+    }
+
+    private static class Stripe {
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private IntMap<ProductRecord> records = new IntMap<>();
+        private ProductColumns columns;
+
+        Stripe(ProductColumns columns) {
+            this.columns = columns;
+        }
+    }
+
+    private Stripe stripe(int id) {
+        return stripes[indexOf(id)];
+    }
+
+    Lock readLock(int id) {
+        Lock lock = stripe(id).lock.readLock();
+        return metrics.sampled() ? new TimedLock(lock, metrics.readLockWait, metrics.readLockHold) : lock;
+    }
+
+    Lock writeLock(int id) {
+        Lock lock = stripe(id).lock.writeLock();
+        return metrics.sampled() ? new TimedLock(lock, metrics.writeLockWait, metrics.writeLockHold) : lock;
+    }
+
+    ProductRecord newRecord(Product product, List<Review> reviews) {
+        return new ProductRecord(product, reviews, reviewStore);
+    }
+
+    void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    ProductRecord get(int id) {
+        return stripe(id).records.get(id);
+    }
+
+    boolean putIfAbsent(ProductRecord record) {
+        return put(record, false);
+    }
+
+    /**
+     * Like {@link #putIfAbsent(ProductRecord)} for a product read from the
+     * data folder or the journal, listeners are told it was loaded, not added.
+     */
+    boolean load(ProductRecord record) {
+        return put(record, true);
+    }
+
+    private boolean put(ProductRecord record, boolean loaded) {
+        Product product = record.getProduct();
+        Stripe stripe = stripe(product.getId());
+        if (stripe.records.containsKey(product.getId())) {
+            return false;
+        }
+        if (stripe.columns != null) {
+            record.bind(stripe.columns);
+        }
+        stripe.records.put(product.getId(), record);
+        if (loaded) {
+            listeners.forEach(listener -> listener.loaded(product));
+        } else {
+            listeners.forEach(listener -> listener.added(product));
+        }
+        return true;
+    }
+
+    /**
+     * Drops a record, for the columnar layout only the record, its row stays.
+     */
+    ProductRecord remove(int id) {
+        ProductRecord record = stripe(id).records.remove(id);
+        if (record != null) {
+            Product product = record.getProduct();
+            listeners.forEach(listener -> listener.removed(product));
+        }
+        return record;
+    }
+
+    Product addReview(ProductRecord record, Review review) {
+        return addReviews(record, List.of(review));
+    }
+
+    Product addReviews(ProductRecord record, List<Review> reviews) {
+        Product previous = record.getProduct();
+        Product current = record.addReviews(reviews);
+        listeners.forEach(listener -> listener.replaced(previous, current));
+        return current;
+    }
+
+    List<Product> products() {
+        List<Product> result = new ArrayList<>();
+        for (Stripe stripe : stripes) {
+            Lock readLock = stripe.lock.readLock();
+            try {
+                readLock.lock();
+                stripe.records.values().forEach(record -> result.add(record.getProduct()));
+            } finally {
+                readLock.unlock();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Visits every product matching the filter without copying the catalog,
+     * holding one stripe's read lock at a time, so the action must not block.
+     */
+    void forEach(Predicate<Product> filter, Consumer<Product> action) {
+        for (Stripe stripe : stripes) {
+            Lock readLock = stripe.lock.readLock();
+            try {
+                readLock.lock();
+                scan(stripe, filter, action);
+            } finally {
+                readLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Runs the action for the matching products of a read locked stripe.
+     * The columns rule out rows by the {@link ProductFilter} conditions
+     * before any product is created.
+     */
+    private static void scan(Stripe stripe, Predicate<Product> filter, Consumer<Product> action) {
+        ProductColumns columns = stripe.columns;
+        if (columns == null) {
+            stripe.records.forEach(record -> {
+                Product product = record.getProduct();
+                if (filter.test(product)) {
+                    action.accept(product);
+                }
+            });
+            return;
+        }
+        ProductFilter columnFilter = (filter instanceof ProductFilter) ? (ProductFilter) filter : null;
+        for (int row = 0, size = columns.size(); row < size; row++) {
+            if (columnFilter == null || columns.mayMatch(row, columnFilter)) {
+                Product product = columns.get(row);
+                if (filter.test(product)) {
+                    action.accept(product);
+                }
+            }
+        }
+    }
+
+    /**
+     * Folds the matching products into per-stripe results on the pool, splitting the
+     * stripes in halves down to one stripe per task, and combines the
+     * results. The combiner must be associative, the accumulator is called
+     * from several threads but never for the same result at once.
+     */
+    <R> R reduce(ForkJoinPool pool, Predicate<Product> filter, Supplier<R> identity,
+                 BiConsumer<R, Product> accumulator, BinaryOperator<R> combiner) {
+        return pool.invoke(new Fold<>(stripes, 0, stripes.length, filter, identity, accumulator, combiner));
+    }
+
+    private static class Fold<R> extends RecursiveTask<R> {
+        private static final long serialVersionUID = 1L;
+        private final transient Stripe[] stripes;
+        private final int from;
+        private final int to;
+        private final transient Predicate<Product> filter;
+        private final transient Supplier<R> identity;
+        private final transient BiConsumer<R, Product> accumulator;
+        private final transient BinaryOperator<R> combiner;
+
+        Fold(Stripe[] stripes, int from, int to, Predicate<Product> filter, Supplier<R> identity,
+             BiConsumer<R, Product> accumulator, BinaryOperator<R> combiner) {
+            this.stripes = stripes;
+            this.from = from;
+            this.to = to;
+            this.filter = filter;
+            this.identity = identity;
+            this.accumulator = accumulator;
+            this.combiner = combiner;
+        }
+
+        @Override
+        protected R compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                Fold<R> left = new Fold<>(stripes, from, middle, filter, identity, accumulator, combiner);
+                left.fork();
+                R right = new Fold<>(stripes, middle, to, filter, identity, accumulator, combiner).compute();
+                return combiner.apply(left.join(), right);
+            }
+            R result = identity.get();
+            Lock readLock = stripes[from].lock.readLock();
+            try {
+                readLock.lock();
+                scan(stripes[from], filter, product -> accumulator.accept(result, product));
+            } finally {
+                readLock.unlock();
+            }
+            return result;
+        }
+    }
+
+    Map<Product, List<Review>> toMap() {
+        return toMap(() -> {
+        });
+    }
+
+    /**
+     * Copies all records while every stripe is read locked, so the copy is
+     * consistent across stripes, and runs the given action before unlocking.
+     */
+    Map<Product, List<Review>> toMap(Runnable whileLocked) {
+        Map<Product, List<Review>> result = new HashMap<>();
+        int locked = 0;
+        try {
+            for (; locked < stripes.length; locked++) {
+                stripes[locked].lock.readLock().lock();
+            }
+            for (Stripe stripe : stripes) {
+                stripe.records.values().forEach(record -> result.put(record.getProduct(), record.copyReviews()));
+            }
+            whileLocked.run();
+        } finally {
+            for (int i = 0; i < locked; i++) {
+                stripes[i].lock.readLock().unlock();
+            }
+        }
+        return result;
+    }
+
+    void replaceAll(Map<Product, List<Review>> products) {
+        List<IntMap<ProductRecord>> rebuilt = new ArrayList<>(stripes.length);
+        ProductColumns[] columns = new ProductColumns[stripes.length];
+        for (int i = 0; i < stripes.length; i++) {
+            rebuilt.add(new IntMap<>(products.size() / stripes.length));
+            columns[i] = columnar ? new ProductColumns() : null;
+        }
+        products.forEach((product, reviews) -> {
+            int i = indexOf(product.getId());
+            if (!rebuilt.get(i).containsKey(product.getId())) {
+                ProductRecord record = newRecord(product, reviews);
+                if (columns[i] != null) {
+                    record.bind(columns[i]);
+                }
+                rebuilt.get(i).put(product.getId(), record);
+            }
+        });
+        List<Product> current = null;
+        if (!listeners.isEmpty()) {
+            List<Product> added = new ArrayList<>(products.size());
+            rebuilt.forEach(records -> records.values().forEach(record -> added.add(record.getProduct())));
+            current = Collections.unmodifiableList(added);
+        }
+        int locked = 0;
+        try {
+            for (; locked < stripes.length; locked++) {
+                stripes[locked].lock.writeLock().lock();
+            }
+            for (int i = 0; i < stripes.length; i++) {
+                stripes[i].records = rebuilt.get(i);
+                stripes[i].columns = columns[i];
+            }
+            if (current != null) {
+                List<Product> restored = current;
+                listeners.forEach(listener -> listener.replacedAll(restored));
+            }
+        } finally {
+            for (int i = 0; i < locked; i++) {
+                stripes[i].lock.writeLock().unlock();
+            }
+        }
+    }
+
+    void clear() {
+        replaceAll(Map.of());
+    }
+
+    int getStripeCount() {
+        return stripes.length;
+    }
+
+    /**
+     * @return the stripe of the id, from 0 to {@link #getStripeCount()} - 1
+     */
+    int indexOf(int id) {
+        // top bits of the hash, the low bits are used for slots inside the stripe's IntMap
+        return stripes.length == 1 ? 0 : (id * 0x9E3779B9) >>> shift;
+    }
+}
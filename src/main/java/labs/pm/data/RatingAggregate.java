@@ -0,0 +1,37 @@
+package labs.pm.data;
+
+import java.util.Collection;
+
+/**
+ * Running count, sum and histogram of review ratings for one product,
+ * so a new review updates the average in constant time.
+ */
+class RatingAggregate {
+    private final int[] histogram = new int[Rating.values().length];
+    private long count;
+    private long sum;
+
+    static RatingAggregate of(Collection<Review> reviews) {
+        RatingAggregate aggregate = new RatingAggregate();
+        reviews.forEach(review -> aggregate.add(review.getRating()));
+        return aggregate;
+    }
+
+    void add(Rating rating) {
+        histogram[rating.ordinal()]++;
+        count++;
+        sum += rating.ordinal();
+    }
+
+    double getMean() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    int getRoundedMean() {
+        return (int) Math.round(getMean());
+    }
+
+    RatingSummary toSummary() {
+        return new RatingSummary(count, sum, histogram.clone());
+    }
+}
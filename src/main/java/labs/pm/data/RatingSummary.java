@@ -0,0 +1,54 @@
+package labs.pm.data;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+public class RatingSummary {
+    private final long count;
+    private final long sum;
+    private final int[] histogram;
+
+    RatingSummary(long count, long sum, int[] histogram) {
+        this.count = count;
+        this.sum = sum;
+        this.histogram = histogram;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getSum() {
+        return sum;
+    }
+
+    public double getMean() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    public Rating getRating() {
+        return Rateable.convert((int) Math.round(getMean()));
+    }
+
+    public int getCount(Rating rating) {
+        return histogram[rating.ordinal()];
+    }
+
+    public Map<Rating, Integer> getHistogram() {
+        Map<Rating, Integer> result = new EnumMap<>(Rating.class);
+        for (Rating rating : Rating.values()) {
+            result.put(rating, histogram[rating.ordinal()]);
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    @Override
+    public String toString() {
+        return "RatingSummary{" +
+                "count=" + count +
+                ", mean=" + getMean() +
+                ", histogram=" + getHistogram() +
+                '}';
+    }
+}
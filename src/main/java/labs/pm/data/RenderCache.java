@@ -0,0 +1,102 @@
+package labs.pm.data;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Least recently used cache of rendered text, bounded by the total number
+ * of characters it holds. Keys are spread over segments, each with its own
+ * lock, its own LRU order and an equal share of the capacity, so lookups
+ * of different keys rarely wait for each other. Eviction is LRU within a
+ * segment, which approximates LRU over the whole cache.
+ */
+class RenderCache<K> {
+    private static final int SEGMENTS = 16;
+    private final Segment<K>[] segments;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    private static class Segment<K> {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final LinkedHashMap<K, String> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private final long capacity;
+        private long weight;
+
+        Segment(long capacity) {
+            this.capacity = capacity;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    RenderCache(long capacity) {
+        segments = (Segment<K>[]) new Segment<?>[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment<>(capacity / SEGMENTS);
+        }
+    }
+
+    private Segment<K> segment(K key) {
+        int hash = key.hashCode();
+        return segments[(hash ^ (hash >>> 16)) & (SEGMENTS - 1)];
+    }
+
+    String get(K key) {
+        Segment<K> segment = segment(key);
+        String text;
+        try {
+            segment.lock.lock();
+            text = segment.entries.get(key);
+        } finally {
+            segment.lock.unlock();
+        }
+        if (text == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return text;
+    }
+
+    void put(K key, String text) {
+        Segment<K> segment = segment(key);
+        if (text.length() > segment.capacity) {
+            return;
+        }
+        try {
+            segment.lock.lock();
+            String previous = segment.entries.put(key, text);
+            segment.weight += text.length() - (previous == null ? 0 : previous.length());
+            Iterator<Map.Entry<K, String>> eldest = segment.entries.entrySet().iterator();
+            while (segment.weight > segment.capacity) {
+                segment.weight -= eldest.next().getValue().length();
+                eldest.remove();
+                evictions.increment();
+            }
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    /**
+     * Segments are read one at a time, size and weight are an estimate
+     * while reports are cached meanwhile.
+     */
+    CacheStatistics getStatistics() {
+        int size = 0;
+        long weight = 0;
+        for (Segment<K> segment : segments) {
+            try {
+                segment.lock.lock();
+                size += segment.entries.size();
+                weight += segment.weight;
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+        return new CacheStatistics(hits.sum(), misses.sum(), evictions.sum(), size, weight);
+    }
+}
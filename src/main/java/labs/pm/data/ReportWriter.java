@@ -0,0 +1,103 @@
+package labs.pm.data;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Formats and writes reports on its own threads. At most {@code capacity}
+ * reports wait or run at a time, further callers block until one finishes.
+ * A report asked for again while the previous request with the same key
+ * still waits is merged into it: the newer snapshot is written once and
+ * both callers get the same future. Reports submitted after
+ * {@link #close()} fail with a RejectedExecutionException.
+ */
+class ReportWriter {
+    private final ExecutorService executor;
+    private final Semaphore capacity;
+    private final Map<String, Pending> pending = new ConcurrentHashMap<>();
+
+    interface Report {
+        Path write() throws IOException;
+    }
+
+    private static class Pending {
+        private final CompletableFuture<Path> result = new CompletableFuture<>();
+        private Report report;
+        private boolean started;
+
+        Pending(Report report) {
+            this.report = report;
+        }
+    }
+
+    ReportWriter(int threads, int capacity) {
+        this.capacity = new Semaphore(capacity);
+        this.executor = Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "report-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    CompletableFuture<Path> submit(String key, Report report) {
+        while (true) {
+            Pending existing = pending.get(key);
+            if (existing != null) {
+                synchronized (existing) {
+                    if (!existing.started) {
+                        existing.report = report;
+                        return existing.result;
+                    }
+                }
+            }
+            Pending created = new Pending(report);
+            if (pending.putIfAbsent(key, created) == null) {
+                capacity.acquireUninterruptibly();
+                try {
+                    executor.execute(() -> run(key, created));
+                } catch (RejectedExecutionException e) {
+                    pending.remove(key, created);
+                    capacity.release();
+                    created.result.completeExceptionally(e);
+                }
+                return created.result;
+            }
+        }
+    }
+
+    private void run(String key, Pending task) {
+        Report report;
+        synchronized (task) {
+            task.started = true;
+            pending.remove(key, task);
+            report = task.report;
+        }
+        try {
+            task.result.complete(report.write());
+        } catch (Exception e) {
+            task.result.completeExceptionally(e);
+        } finally {
+            capacity.release();
+        }
+    }
+
+    /**
+     * Writes the reports already submitted, then stops the writer threads.
+     */
+    void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
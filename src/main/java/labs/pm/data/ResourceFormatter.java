@@ -0,0 +1,104 @@
+package labs.pm.data;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.text.FieldPosition;
+import java.text.NumberFormat;
+import java.time.format.DateTimeFormatter;
+import java.time.format.FormatStyle;
+import java.util.Locale;
+import java.util.ResourceBundle;
+
+/**
+ * Formats products and reviews for one locale. The resource patterns are
+ * compiled once, NumberFormat is not thread safe so every thread gets its
+ * own copy of the currency format.
+ */
+class ResourceFormatter {
+    private final Locale locale;
+    private final ResourceBundle resources;
+    private final DateTimeFormatter dateFormat;
+    private final MessageTemplate productTemplate;
+    private final MessageTemplate reviewTemplate;
+    private final ThreadLocal<MoneyFormat> money;
+
+    private static class MoneyFormat {
+        private final NumberFormat format;
+        private final StringBuffer buffer = new StringBuffer();
+        private final FieldPosition position = new FieldPosition(0);
+
+        MoneyFormat(NumberFormat format) {
+            this.format = format;
+        }
+
+        StringBuffer format(BigDecimal amount) {
+            buffer.setLength(0);
+            return format.format(amount, buffer, position);
+        }
+    }
+
+    ResourceFormatter(Locale locale) {
+        this.locale = locale;
+        resources = ResourceBundle.getBundle("resources", locale);
+        dateFormat = DateTimeFormatter.ofLocalizedDate(FormatStyle.SHORT).localizedBy(locale);
+        productTemplate = MessageTemplate.compile(resources.getString("product"));
+        reviewTemplate = MessageTemplate.compile(resources.getString("review"));
+        NumberFormat moneyFormat = NumberFormat.getCurrencyInstance(locale);
+        money = ThreadLocal.withInitial(() -> new MoneyFormat((NumberFormat) moneyFormat.clone()));
+    }
+
+    void formatProduct(Product product, Appendable out) throws IOException {
+        productTemplate.format(out, (argument, to) -> {
+            switch (argument) {
+                case 0:
+                    to.append(product.getName());
+                    break;
+                case 1:
+                    to.append(money.get().format(product.getPrice()));
+                    break;
+                case 2:
+                    to.append(product.getRating().getStars());
+                    break;
+                case 3:
+                    dateFormat.formatTo(product.getBestBefore(), to);
+                    break;
+                default:
+                    to.append('{').append(String.valueOf(argument)).append('}');
+            }
+        });
+    }
+
+    void formatReview(Review review, Appendable out) throws IOException {
+        reviewTemplate.format(out, (argument, to) -> {
+            switch (argument) {
+                case 0:
+                    to.append(review.getRating().getStars());
+                    break;
+                case 1:
+                    to.append(review.getComments());
+                    break;
+                default:
+                    to.append('{').append(String.valueOf(argument)).append('}');
+            }
+        });
+    }
+
+    String formatProduct(Product product) {
+        StringBuilder out = new StringBuilder();
+        try {
+            formatProduct(product, out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toString();
+    }
+
+    String formatMoney(BigDecimal amount) {
+        return money.get().format(amount).toString();
+    }
+
+    String getText(String key) {
+        return resources.getString(key);
+    }
+}
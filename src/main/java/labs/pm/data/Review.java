@@ -23,7 +23,7 @@ public class Review implements Comparable<Review>, Serializable {
     public String toString() {
         return "Review{" +
                 "rating=" + rating +
-                ", comments='" + comments + '\'' +
+                ", comments='" + getComments() + '\'' +
                 '}';
     }
 
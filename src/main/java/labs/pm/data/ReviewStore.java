@@ -0,0 +1,36 @@
+package labs.pm.data;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Storage backend for product reviews. Each product gets its own
+ * {@link Reviews}, guarded by the product's {@link ProductStore} stripe lock,
+ * while the store itself is shared by all stripes.
+ */
+interface ReviewStore extends Closeable {
+
+    Reviews create(int productId, List<Review> initial);
+
+    /**
+     * Moves reviews the store still buffers to where it keeps them for good.
+     */
+    void flush() throws IOException;
+
+    @Override
+    default void close() throws IOException {
+    }
+
+    interface Reviews {
+
+        void add(Review review);
+
+        int size();
+
+        /**
+         * @return a new list, changes to it are not written back
+         */
+        List<Review> toList();
+    }
+}
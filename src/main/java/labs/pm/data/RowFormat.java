@@ -0,0 +1,272 @@
+package labs.pm.data;
+
+import java.math.BigDecimal;
+import java.text.ParseException;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * Delimited row layout compiled from a data format pattern such as
+ * {@code {0},{1},{2}}. Placeholders must be separated by one and the same
+ * character. A field may be quoted with {@code "} to contain separators,
+ * with {@code ""} standing for a quote inside it. The last field takes the
+ * rest of the line, like the last argument of a MessageFormat pattern.
+ * The format is immutable and thread safe, rows are not.
+ */
+class RowFormat {
+    private final char separator;
+    private final int[] columnOf;
+    private final int[] argumentOf;
+    private final int columns;
+
+    private RowFormat(char separator, int[] columnOf, int[] argumentOf) {
+        this.separator = separator;
+        this.columnOf = columnOf;
+        this.argumentOf = argumentOf;
+        this.columns = argumentOf.length;
+    }
+
+    static RowFormat compile(String pattern) {
+        int[] argumentOfColumn = new int[pattern.length()];
+        int columns = 0;
+        int maxArgument = -1;
+        char separator = 0;
+        int i = 0;
+        while (i < pattern.length()) {
+            int close = pattern.indexOf('}', i);
+            if (pattern.charAt(i) != '{' || close < 0) {
+                throw new IllegalArgumentException("Unsupported data format " + pattern);
+            }
+            int argument = Integer.parseInt(pattern.substring(i + 1, close));
+            argumentOfColumn[columns++] = argument;
+            maxArgument = Math.max(maxArgument, argument);
+            i = close + 1;
+            if (i < pattern.length()) {
+                if (separator != 0 && pattern.charAt(i) != separator) {
+                    throw new IllegalArgumentException("Unsupported data format " + pattern);
+                }
+                separator = pattern.charAt(i++);
+            }
+        }
+        int[] columnOf = new int[maxArgument + 1];
+        Arrays.fill(columnOf, -1);
+        for (int column = 0; column < columns; column++) {
+            columnOf[argumentOfColumn[column]] = column;
+        }
+        return new RowFormat(separator == 0 ? ',' : separator, columnOf, Arrays.copyOf(argumentOfColumn, columns));
+    }
+
+    /**
+     * Appends one line of the given arguments, {@code null} as an empty
+     * field. Fields holding the separator or a quote are quoted, line
+     * breaks become spaces since a row is one line.
+     */
+    void format(StringBuilder out, Object... arguments) {
+        for (int column = 0; column < columns; column++) {
+            if (column > 0) {
+                out.append(separator);
+            }
+            Object argument = arguments[argumentOf[column]];
+            String text = (argument == null) ? "" : argument.toString().replace('\r', ' ').replace('\n', ' ');
+            if (text.indexOf(separator) >= 0 || text.indexOf('"') >= 0) {
+                out.append('"').append(text.replace("\"", "\"\"")).append('"');
+            } else {
+                out.append(text);
+            }
+        }
+    }
+
+    Row newRow() {
+        return new Row();
+    }
+
+    /**
+     * Field boundaries of the current line. Values are read straight from
+     * the line, only {@link #getString(int)} creates a new object per field.
+     */
+    class Row {
+        private final int[] starts = new int[columns];
+        private final int[] ends = new int[columns];
+        private final boolean[] quoted = new boolean[columns];
+        private CharSequence text;
+        private int line;
+        private int fields;
+
+        void reset(CharSequence text, int line) throws ParseException {
+            this.text = text;
+            this.line = line;
+            fields = 0;
+            int pos = 0;
+            int length = text.length();
+            while (fields < columns) {
+                int column = fields++;
+                if (pos < length && text.charAt(pos) == '"') {
+                    int end = pos + 1;
+                    while (true) {
+                        if (end >= length) {
+                            throw error("unterminated quote", pos);
+                        }
+                        if (text.charAt(end) == '"') {
+                            if (end + 1 < length && text.charAt(end + 1) == '"') {
+                                end += 2;
+                                continue;
+                            }
+                            break;
+                        }
+                        end++;
+                    }
+                    starts[column] = pos + 1;
+                    ends[column] = end;
+                    quoted[column] = true;
+                    pos = end + 1;
+                    if (pos < length && text.charAt(pos) != separator) {
+                        throw error("separator expected after quoted field", pos);
+                    }
+                } else {
+                    int end = (column == columns - 1) ? length : indexOfSeparator(pos, length);
+                    starts[column] = pos;
+                    ends[column] = end;
+                    quoted[column] = false;
+                    pos = end;
+                }
+                if (pos >= length) {
+                    break;
+                }
+                pos++;
+            }
+            if (pos < length) {
+                throw error("unexpected data after last field", pos);
+            }
+        }
+
+        private int indexOfSeparator(int from, int length) {
+            for (int i = from; i < length; i++) {
+                if (text.charAt(i) == separator) {
+                    return i;
+                }
+            }
+            return length;
+        }
+
+        private int column(int argument) throws ParseException {
+            int column = argument < columnOf.length ? columnOf[argument] : -1;
+            if (column < 0 || column >= fields) {
+                throw error("missing field {" + argument + "}", text.length());
+            }
+            return column;
+        }
+
+        boolean has(int argument) {
+            int column = argument < columnOf.length ? columnOf[argument] : -1;
+            return column >= 0 && column < fields && ends[column] > starts[column];
+        }
+
+        char getChar(int argument) throws ParseException {
+            int column = column(argument);
+            if (ends[column] - starts[column] != 1) {
+                throw error("single character expected in field {" + argument + "}", starts[column]);
+            }
+            return text.charAt(starts[column]);
+        }
+
+        String getString(int argument) throws ParseException {
+            int column = column(argument);
+            if (!quoted[column]) {
+                return text.subSequence(starts[column], ends[column]).toString();
+            }
+            StringBuilder value = new StringBuilder(ends[column] - starts[column]);
+            for (int i = starts[column]; i < ends[column]; i++) {
+                char c = text.charAt(i);
+                value.append(c);
+                if (c == '"') {
+                    i++;
+                }
+            }
+            return value.toString();
+        }
+
+        int getInt(int argument) throws ParseException {
+            int column = column(argument);
+            return (int) parseLong(starts[column], ends[column], Integer.MIN_VALUE, Integer.MAX_VALUE);
+        }
+
+        BigDecimal getDecimal(int argument) throws ParseException {
+            int column = column(argument);
+            int start = starts[column];
+            int end = ends[column];
+            int point = -1;
+            for (int i = start; i < end; i++) {
+                if (text.charAt(i) == '.') {
+                    point = i;
+                    break;
+                }
+            }
+            if (end - start > 18) {
+                try {
+                    return new BigDecimal(text.subSequence(start, end).toString());
+                } catch (NumberFormatException e) {
+                    throw error("number expected in field {" + argument + "}", start);
+                }
+            }
+            if (point < 0) {
+                return BigDecimal.valueOf(parseLong(start, end, Long.MIN_VALUE, Long.MAX_VALUE));
+            }
+            boolean negative = text.charAt(start) == '-';
+            int digits = (negative || text.charAt(start) == '+') ? start + 1 : start;
+            if (point == digits && point == end - 1) {
+                throw error("number expected in field {" + argument + "}", start);
+            }
+            long integer = (point == digits) ? 0 : parseLong(start, point, Long.MIN_VALUE, Long.MAX_VALUE);
+            long unscaled = integer;
+            for (int i = point + 1; i < end; i++) {
+                unscaled = unscaled * 10 + (negative ? -digit(i) : digit(i));
+            }
+            return BigDecimal.valueOf(unscaled, end - point - 1);
+        }
+
+        LocalDate getDate(int argument) throws ParseException {
+            int column = column(argument);
+            int start = starts[column];
+            if (ends[column] - start != 10 || text.charAt(start + 4) != '-' || text.charAt(start + 7) != '-') {
+                throw error("date yyyy-MM-dd expected in field {" + argument + "}", start);
+            }
+            try {
+                return LocalDate.of(
+                        (int) parseLong(start, start + 4, 0, 9999),
+                        (int) parseLong(start + 5, start + 7, 1, 12),
+                        (int) parseLong(start + 8, start + 10, 1, 31));
+            } catch (DateTimeException e) {
+                throw error(e.getMessage(), start);
+            }
+        }
+
+        private long parseLong(int start, int end, long min, long max) throws ParseException {
+            boolean negative = start < end && text.charAt(start) == '-';
+            int i = negative || (start < end && text.charAt(start) == '+') ? start + 1 : start;
+            if (i >= end) {
+                throw error("number expected", start);
+            }
+            long value = 0;
+            for (; i < end; i++) {
+                value = value * 10 + digit(i);
+                if (negative ? -value < min : value > max) {
+                    throw error("number out of range", start);
+                }
+            }
+            return negative ? -value : value;
+        }
+
+        private int digit(int i) throws ParseException {
+            int digit = text.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw error("digit expected", i);
+            }
+            return digit;
+        }
+
+        private ParseException error(String message, int offset) {
+            return new ParseException("line " + line + ": " + message, offset);
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package labs.pm.data;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Versioned binary snapshot of products and their reviews.
+ * <pre>
+ * header   magic, version, string count, product count, review count
+ * strings  int byte length + UTF-8 bytes, each distinct name and comment once
+ * products fixed width records, see {@link #PRODUCT_BYTES}
+ * reviews  long area length, then one varint per review holding
+ *          (comment string index + 1) &lt;&lt; 3 | rating, in product order,
+ *          review counts are in the product records
+ * </pre>
+ * Files are written and read through a FileChannel with one reusable
+ * direct buffer, products are created through constructors, not reflection.
+ */
+class SnapshotFormat {
+    static final int MAGIC = 0x504D534E;
+    static final short VERSION = 1;
+    private static final byte DRINK = 0;
+    private static final byte FOOD = 1;
+    private static final byte PRICE_IN_STRINGS = Byte.MIN_VALUE;
+    private static final int NO_STRING = -1;
+    // id, type, rating, price scale, padding, price unscaled, name, best before epoch day, review count
+    static final int PRODUCT_BYTES = 4 + 1 + 1 + 1 + 1 + 8 + 4 + 4 + 4;
+    private static final int MAX_VARINT_BYTES = 10;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private SnapshotFormat() {
+    }
+
+    static void write(Path file, Map<Product, List<Review>> products) throws IOException {
+        Map<String, Integer> stringIds = new HashMap<>();
+        List<String> strings = new ArrayList<>();
+        long reviewCount = 0;
+        for (Map.Entry<Product, List<Review>> entry : products.entrySet()) {
+            intern(entry.getKey().getName(), stringIds, strings);
+            if (!fitsRecord(entry.getKey().getPrice())) {
+                intern(entry.getKey().getPrice().toString(), stringIds, strings);
+            }
+            for (Review review : entry.getValue()) {
+                intern(review.getComments(), stringIds, strings);
+            }
+            reviewCount += entry.getValue().size();
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            Output out = new Output(channel);
+            out.ensure(4 + 2 + 4 + 4 + 8).putInt(MAGIC).putShort(VERSION)
+                    .putInt(strings.size()).putInt(products.size()).putLong(reviewCount);
+            for (String text : strings) {
+                byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+                out.ensure(4).putInt(bytes.length);
+                out.put(bytes);
+            }
+            for (Map.Entry<Product, List<Review>> entry : products.entrySet()) {
+                Product product = entry.getKey();
+                BigDecimal price = product.getPrice();
+                boolean priceInStrings = !fitsRecord(price);
+                out.ensure(PRODUCT_BYTES)
+                        .putInt(product.getId())
+                        .put(product instanceof Food ? FOOD : DRINK)
+                        .put((byte) product.getRating().ordinal())
+                        .put(priceInStrings ? PRICE_IN_STRINGS : (byte) price.scale())
+                        .put((byte) 0)
+                        .putLong(priceInStrings ? stringIds.get(price.toString()) : price.unscaledValue().longValue())
+                        .putInt(stringIds.getOrDefault(product.getName(), NO_STRING))
+                        .putInt(product instanceof Food ? (int) product.getBestBefore().toEpochDay() : 0)
+                        .putInt(entry.getValue().size());
+            }
+            long areaLength = 0;
+            for (List<Review> reviews : products.values()) {
+                for (Review review : reviews) {
+                    areaLength += varintLength(reviewValue(review, stringIds));
+                }
+            }
+            out.ensure(8).putLong(areaLength);
+            for (List<Review> reviews : products.values()) {
+                for (Review review : reviews) {
+                    out.putVarint(reviewValue(review, stringIds));
+                }
+            }
+            out.flush();
+            channel.force(true);
+        }
+    }
+
+    private static long reviewValue(Review review, Map<String, Integer> stringIds) {
+        return ((stringIds.getOrDefault(review.getComments(), NO_STRING) + 1L) << 3) | review.getRating().ordinal();
+    }
+
+    private static int varintLength(long value) {
+        int length = 1;
+        while ((value >>>= 7) != 0) {
+            length++;
+        }
+        return length;
+    }
+
+    private static boolean fitsRecord(BigDecimal price) {
+        return price.unscaledValue().bitLength() <= 63 && price.scale() >= 0 && price.scale() <= Byte.MAX_VALUE;
+    }
+
+    private static void intern(String text, Map<String, Integer> stringIds, List<String> strings) {
+        if (text != null && !stringIds.containsKey(text)) {
+            stringIds.put(text, strings.size());
+            strings.add(text);
+        }
+    }
+
+    static Map<Product, List<Review>> read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            Input in = new Input(channel);
+            ByteBuffer header = in.require(4 + 2 + 4 + 4 + 8);
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not a product snapshot " + file);
+            }
+            short version = header.getShort();
+            if (version != VERSION) {
+                throw new IOException("Unsupported snapshot version " + version + " in " + file);
+            }
+            String[] strings = new String[header.getInt()];
+            int productCount = header.getInt();
+            header.getLong();
+            Rating[] ratings = Rating.values();
+            for (int i = 0; i < strings.length; i++) {
+                int length = in.require(4).getInt();
+                strings[i] = in.readString(length);
+            }
+            Product[] products = new Product[productCount];
+            int[] reviewCounts = new int[productCount];
+            for (int i = 0; i < productCount; i++) {
+                ByteBuffer record = in.require(PRODUCT_BYTES);
+                int id = record.getInt();
+                byte type = record.get();
+                Rating rating = ratings[record.get()];
+                byte scale = record.get();
+                record.get();
+                long unscaled = record.getLong();
+                String name = string(strings, record.getInt());
+                int bestBefore = record.getInt();
+                reviewCounts[i] = record.getInt();
+                BigDecimal price = (scale == PRICE_IN_STRINGS)
+                        ? new BigDecimal(strings[(int) unscaled])
+                        : BigDecimal.valueOf(unscaled, scale);
+                products[i] = (type == FOOD)
+                        ? new Food(id, name, price, rating, LocalDate.ofEpochDay(bestBefore))
+                        : new Drink(id, name, price, rating);
+            }
+            in.require(8).getLong();
+            Map<Product, List<Review>> result = new HashMap<>(productCount * 4 / 3 + 1);
+            for (int i = 0; i < productCount; i++) {
+                List<Review> reviews = new ArrayList<>(reviewCounts[i]);
+                for (int j = 0; j < reviewCounts[i]; j++) {
+                    long value = in.readVarint();
+                    reviews.add(new Review(ratings[(int) (value & 7)], string(strings, (int) (value >>> 3) - 1)));
+                }
+                result.put(products[i], reviews);
+            }
+            return result;
+        }
+    }
+
+    private static String string(String[] strings, int index) {
+        return index == NO_STRING ? null : strings[index];
+    }
+
+    private static class Output {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        Output(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        ByteBuffer ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+            return buffer;
+        }
+
+        void putVarint(long value) throws IOException {
+            ensure(MAX_VARINT_BYTES);
+            while ((value & ~0x7FL) != 0) {
+                buffer.put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            buffer.put((byte) value);
+        }
+
+        void put(byte[] bytes) throws IOException {
+            int offset = 0;
+            while (offset < bytes.length) {
+                int chunk = Math.min(ensure(1).remaining(), bytes.length - offset);
+                buffer.put(bytes, offset, chunk);
+                offset += chunk;
+            }
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+
+    private static class Input {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private byte[] bytes = new byte[256];
+
+        Input(FileChannel channel) {
+            this.channel = channel;
+            buffer.flip();
+        }
+
+        ByteBuffer require(int count) throws IOException {
+            if (buffer.remaining() < count) {
+                buffer.compact();
+                while (buffer.position() < count) {
+                    if (channel.read(buffer) < 0) {
+                        throw new IOException("Unexpected end of snapshot");
+                    }
+                }
+                buffer.flip();
+            }
+            return buffer;
+        }
+
+        long readVarint() throws IOException {
+            if (buffer.remaining() < MAX_VARINT_BYTES) {
+                require(Math.min(MAX_VARINT_BYTES, (int) Math.min(Integer.MAX_VALUE, remainingInFile())));
+            }
+            long value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = buffer.get();
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+        }
+
+        private long remainingInFile() throws IOException {
+            return buffer.remaining() + channel.size() - channel.position();
+        }
+
+        String readString(int length) throws IOException {
+            if (bytes.length < length) {
+                bytes = new byte[Math.max(length, bytes.length * 2)];
+            }
+            int offset = 0;
+            while (offset < length) {
+                int chunk = Math.min(length - offset, BUFFER_SIZE);
+                require(chunk).get(bytes, offset, chunk);
+                offset += chunk;
+            }
+            return new String(bytes, 0, length, StandardCharsets.UTF_8);
+        }
+    }
+}
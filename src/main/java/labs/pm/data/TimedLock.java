@@ -0,0 +1,74 @@
+package labs.pm.data;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Lock view that records how long the caller waited for the lock and how
+ * long it held it. Made for one acquisition by one thread, callers get a
+ * new one from a sampled {@link ProductStore#readLock(int)} or
+ * {@link ProductStore#writeLock(int)}.
+ */
+class TimedLock implements Lock {
+    private final Lock lock;
+    private final LatencyHistogram wait;
+    private final LatencyHistogram hold;
+    private long acquired;
+
+    TimedLock(Lock lock, LatencyHistogram wait, LatencyHistogram hold) {
+        this.lock = lock;
+        this.wait = wait;
+        this.hold = hold;
+    }
+
+    @Override
+    public void lock() {
+        long start = System.nanoTime();
+        lock.lock();
+        acquired(start);
+    }
+
+    @Override
+    public void lockInterruptibly() throws InterruptedException {
+        long start = System.nanoTime();
+        lock.lockInterruptibly();
+        acquired(start);
+    }
+
+    @Override
+    public boolean tryLock() {
+        long start = System.nanoTime();
+        if (lock.tryLock()) {
+            acquired(start);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+        long start = System.nanoTime();
+        if (lock.tryLock(time, unit)) {
+            acquired(start);
+            return true;
+        }
+        return false;
+    }
+
+    private void acquired(long start) {
+        acquired = System.nanoTime();
+        wait.record(acquired - start);
+    }
+
+    @Override
+    public void unlock() {
+        lock.unlock();
+        hold.recordSince(acquired);
+    }
+
+    @Override
+    public Condition newCondition() {
+        return lock.newCondition();
+    }
+}
@@ -0,0 +1,50 @@
+package labs.pm.data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Keeps the first {@code limit} of the offered elements in comparator
+ * order, in a heap whose head is the worst element kept. Offering n
+ * elements costs O(n log limit) time and O(limit) memory. Not thread safe.
+ */
+class TopN<T> {
+    private final Comparator<? super T> order;
+    private final int limit;
+    private final PriorityQueue<T> heap;
+
+    TopN(Comparator<? super T> order, int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Negative limit " + limit);
+        }
+        this.order = order;
+        this.limit = limit;
+        this.heap = new PriorityQueue<>(Math.max(1, Math.min(limit, 1024)), Collections.reverseOrder(order));
+    }
+
+    void offer(T element) {
+        if (heap.size() < limit) {
+            heap.add(element);
+        } else if (limit > 0 && order.compare(element, heap.peek()) < 0) {
+            heap.poll();
+            heap.add(element);
+        }
+    }
+
+    /**
+     * Merges another selection of the same order and limit into this one.
+     */
+    TopN<T> addAll(TopN<T> other) {
+        other.heap.forEach(this::offer);
+        return this;
+    }
+
+    List<T> toList() {
+        List<T> result = new ArrayList<>(heap);
+        result.sort(order);
+        return result;
+    }
+}
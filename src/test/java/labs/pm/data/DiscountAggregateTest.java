@@ -0,0 +1,83 @@
+package labs.pm.data;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DiscountAggregateTest {
+    private final LocalDate today = LocalDate.of(2024, 3, 1);
+
+    @Test
+    void sumsByRatingDateAndHappyHour() {
+        DiscountAggregate discounts = new DiscountAggregate();
+        discounts.added(new Drink(1, "Tea", new BigDecimal("1.99"), Rating.FOUR_STAR));
+        discounts.added(new Food(2, "Cake", new BigDecimal("3.99"), Rating.FOUR_STAR, today));
+        discounts.added(new Food(3, "Bread", new BigDecimal("2.00"), Rating.FOUR_STAR, today.plusDays(1)));
+        assertEquals(new BigDecimal("0.40"), discounts.getTotals(today, false).get(Rating.FOUR_STAR));
+        assertEquals(new BigDecimal("0.60"), discounts.getTotals(today, true).get(Rating.FOUR_STAR));
+        discounts.replaced(new Drink(1, "Tea", new BigDecimal("1.99"), Rating.FOUR_STAR),
+                new Drink(1, "Tea", new BigDecimal("1.99"), Rating.ONE_STAR));
+        Map<Rating, BigDecimal> totals = discounts.getTotals(today, true);
+        assertEquals(new BigDecimal("0.40"), totals.get(Rating.FOUR_STAR));
+        assertEquals(new BigDecimal("0.20"), totals.get(Rating.ONE_STAR));
+        discounts.cleared();
+        assertTrue(discounts.getTotals(today, true).isEmpty());
+    }
+
+    @Test
+    void pastDatesAreDropped() {
+        DiscountAggregate discounts = new DiscountAggregate();
+        Food old = new Food(1, "Cake", new BigDecimal("3.99"), Rating.FOUR_STAR, today.minusDays(2));
+        discounts.added(old);
+        discounts.added(new Food(2, "Bread", new BigDecimal("2.00"), Rating.FOUR_STAR, today));
+        discounts.added(new Food(3, "Pie", new BigDecimal("5.00"), Rating.FOUR_STAR, today.plusDays(1)));
+        assertEquals(3, discounts.getDateCount());
+        assertEquals(new BigDecimal("0.20"), discounts.getTotals(today, false).get(Rating.FOUR_STAR));
+        assertEquals(2, discounts.getDateCount());
+        discounts.replaced(old, old.applyRating(Rating.ONE_STAR));
+        assertEquals(2, discounts.getDateCount());
+        Map<Rating, BigDecimal> totals = discounts.getTotals(today.plusDays(1), false);
+        assertEquals(1, discounts.getDateCount());
+        assertEquals(new BigDecimal("0.50"), totals.get(Rating.FOUR_STAR));
+        assertEquals(BigDecimal.ZERO.setScale(2), totals.get(Rating.ONE_STAR));
+    }
+
+    @Test
+    void concurrentReRatesAddUp() throws Exception {
+        DiscountAggregate discounts = new DiscountAggregate();
+        int threads = 4;
+        int products = 1000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int first = t * products;
+            futures.add(executor.submit(() -> {
+                for (int id = first; id < first + products; id++) {
+                    Drink drink = new Drink(id, "Drink", new BigDecimal("1.00"), Rating.NOT_RATED);
+                    discounts.added(drink);
+                    for (Rating rating : Rating.values()) {
+                        Product previous = drink;
+                        drink = (Drink) drink.applyRating(rating);
+                        discounts.replaced(previous, drink);
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+        Map<Rating, BigDecimal> totals = discounts.getTotals(today, true);
+        assertEquals(Map.of(Rating.FIVE_STAR, new BigDecimal("400.00")), totals);
+    }
+}
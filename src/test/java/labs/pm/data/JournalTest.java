@@ -0,0 +1,126 @@
+package labs.pm.data;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JournalTest {
+    @TempDir
+    Path folder;
+
+    private final List<String> replayed = new ArrayList<>();
+    private final Journal.Replay replay = new Journal.Replay() {
+        @Override
+        public void created(Product product) {
+            replayed.add("created " + product.getId() + " " + product.getName() + " " + product.getPrice()
+                    + " " + product.getRating() + " " + product.getClass().getSimpleName());
+        }
+
+        @Override
+        public void reviewed(int id, Rating rating, String comments) {
+            replayed.add("reviewed " + id + " " + rating + " " + comments);
+        }
+    };
+
+    @Test
+    void replaysSyncedRecordsInOrder() throws Exception {
+        for (Journal.SyncMode mode : Journal.SyncMode.values()) {
+            replayed.clear();
+            Path modeFolder = Files.createDirectories(folder.resolve(mode.name()));
+            try (Journal journal = new Journal(modeFolder, mode, 0)) {
+                journal.append(Journal.productCreated(
+                        new Food(1, "Cake", new BigDecimal("5.99"), Rating.NOT_RATED, LocalDate.of(2024, 1, 2))));
+                long sequence = journal.append(Journal.productReviewed(1, Rating.FOUR_STAR, "Nice"),
+                        Journal.productReviewed(1, Rating.TWO_STAR, null));
+                assertEquals(3, sequence);
+                journal.sync(sequence);
+            }
+            assertEquals(3, Journal.replay(Journal.list(modeFolder, false).firstEntry().getValue(), replay));
+            assertEquals(List.of("created 1 Cake 5.99 NOT_RATED Food", "reviewed 1 FOUR_STAR Nice",
+                    "reviewed 1 TWO_STAR null"), replayed);
+        }
+    }
+
+    @Test
+    void truncatesTornRecord() throws Exception {
+        try (Journal journal = new Journal(folder, Journal.SyncMode.GROUP, 0)) {
+            journal.sync(journal.append(Journal.productReviewed(7, Rating.ONE_STAR, "first")));
+        }
+        Path file = Journal.list(folder, false).firstEntry().getValue();
+        long complete = Files.size(file);
+        byte[] record = Journal.productReviewed(7, Rating.FIVE_STAR, "torn").array();
+        Files.write(file, Arrays.copyOf(record, record.length - 3), StandardOpenOption.APPEND);
+        assertEquals(1, Journal.replay(file, replay));
+        assertEquals(complete, Files.size(file));
+        assertEquals(List.of("reviewed 7 ONE_STAR first"), replayed);
+    }
+
+    @Test
+    void truncatesTornLastRecordWithBadChecksum() throws Exception {
+        try (Journal journal = new Journal(folder, Journal.SyncMode.NONE, 0)) {
+            journal.append(Journal.productReviewed(1, Rating.ONE_STAR, "kept"));
+            journal.sync(journal.append(Journal.productReviewed(2, Rating.TWO_STAR, "corrupt")));
+        }
+        Path file = Journal.list(folder, false).firstEntry().getValue();
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length - 1] ^= 1;
+        Files.write(file, bytes);
+        assertEquals(1, Journal.replay(file, replay));
+        assertEquals(List.of("reviewed 1 ONE_STAR kept"), replayed);
+        assertEquals(Journal.productReviewed(1, Rating.ONE_STAR, "kept").remaining(), Files.size(file));
+    }
+
+    @Test
+    void failsOnCorruptRecordBeforeTheEnd() throws IOException {
+        try (Journal journal = new Journal(folder, Journal.SyncMode.NONE, 0)) {
+            journal.append(Journal.productReviewed(1, Rating.ONE_STAR, "first"));
+            journal.sync(journal.append(Journal.productReviewed(2, Rating.TWO_STAR, "after")));
+        }
+        Path file = Journal.list(folder, false).firstEntry().getValue();
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[10] ^= 1;
+        Files.write(file, bytes);
+        assertThrows(ProductManagerException.class, () -> Journal.replay(file, replay));
+        assertArrayEquals(bytes, Files.readAllBytes(file));
+    }
+
+    @Test
+    void failedSyncIsReportedToEveryCaller() throws IOException {
+        Journal journal = new Journal(folder, Journal.SyncMode.GROUP, 0);
+        journal.close();
+        long sequence = journal.append(Journal.productReviewed(1, Rating.ONE_STAR, "lost"));
+        assertThrows(IOException.class, () -> journal.sync(sequence));
+        assertThrows(IOException.class, () -> journal.sync(sequence));
+    }
+
+    @Test
+    void managerRecoversFromJournalAfterRestart() throws Exception {
+        ProductManager.Builder builder = ProductManager.builder()
+                .dataFolder(Files.createDirectories(folder.resolve("data")))
+                .tempFolder(folder.resolve("temp"))
+                .reportFolder(Files.createDirectories(folder.resolve("reports")))
+                .property("journal.enabled", "true")
+                .property("metrics.enabled", "false");
+        ProductManager pm = builder.build();
+        pm.createProduct(1, "Tea", new BigDecimal("1.99"), Rating.NOT_RATED);
+        assertNull(pm.createProduct(2, null, new BigDecimal("1.99"), Rating.NOT_RATED));
+        pm.reviewProduct(1, Rating.FIVE_STAR, "Good");
+        pm.reviewProducts(List.of(new ProductReview(1, Rating.THREE_STAR, "Fine"),
+                new ProductReview(1, Rating.FOUR_STAR, null)));
+        ProductManager restarted = builder.build();
+        assertEquals(3, restarted.getRatingSummary(1).getCount());
+        assertEquals(Rating.FOUR_STAR, restarted.findProduct(1).getRating());
+        assertThrows(ProductManagerException.class, () -> restarted.findProduct(2));
+    }
+}
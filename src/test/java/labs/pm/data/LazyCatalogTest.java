@@ -0,0 +1,118 @@
+package labs.pm.data;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LazyCatalogTest {
+    @TempDir
+    Path folder;
+
+    private Path data;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        data = Files.createDirectories(folder.resolve("data"));
+    }
+
+    private void writeProducts(int count) throws IOException {
+        for (int id = 0; id < count; id++) {
+            Files.writeString(data.resolve("product" + id + ".csv"),
+                    "D," + id + ",Drink" + id + ",1.99,0," + LocalDate.now(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private ProductManager newManager(int capacity) throws IOException {
+        return ProductManager.builder()
+                .dataFolder(data)
+                .tempFolder(folder.resolve("temp"))
+                .reportFolder(Files.createDirectories(folder.resolve("reports")))
+                .property("load.lazy", "true")
+                .property("load.lazy.capacity", Integer.toString(capacity))
+                .property("metrics.enabled", "false")
+                .build();
+    }
+
+    @Test
+    void concurrentReviewsNeverMissEvictedProducts() throws Exception {
+        int productCount = 200;
+        int threads = 8;
+        int reviewsPerThread = 5000;
+        writeProducts(productCount);
+        try (ProductManager pm = newManager(4)) {
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            List<Future<Integer>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int offset = t * 31;
+                futures.add(executor.submit(() -> {
+                    int rejected = 0;
+                    for (int i = 0; i < reviewsPerThread; i++) {
+                        if (pm.reviewProduct((offset + i * 7) % productCount, Rating.FOUR_STAR, "review") == null) {
+                            rejected++;
+                        }
+                    }
+                    return rejected;
+                }));
+            }
+            for (Future<Integer> future : futures) {
+                assertEquals(0, future.get(60, TimeUnit.SECONDS));
+            }
+            executor.shutdown();
+            long total = 0;
+            for (int id = 0; id < productCount; id++) {
+                total += pm.getRatingSummary(id).getCount();
+            }
+            assertEquals((long) threads * reviewsPerThread, total);
+        }
+    }
+
+    @Test
+    void changesOfEvictedProductsAreWrittenBack() throws Exception {
+        writeProducts(3);
+        try (ProductManager pm = newManager(1)) {
+            pm.reviewProduct(0, Rating.FIVE_STAR, "first");
+            pm.reviewProduct(1, Rating.ONE_STAR, "second");
+            pm.createProduct(7, "Tea", new BigDecimal("2.50"), Rating.NOT_RATED);
+            pm.reviewProduct(2, Rating.THREE_STAR, "third");
+        }
+        try (ProductManager pm = newManager(1)) {
+            assertEquals(Rating.FIVE_STAR, pm.findProduct(0).getRating());
+            assertEquals(Rating.ONE_STAR, pm.findProduct(1).getRating());
+            assertEquals(Rating.THREE_STAR, pm.findProduct(2).getRating());
+            assertEquals("Tea", pm.findProduct(7).getName());
+            assertEquals(1, pm.getRatingSummary(0).getCount());
+        }
+    }
+
+    @Test
+    void productThatCannotBeWrittenBackKeepsASlot() throws Exception {
+        writeProducts(2);
+        // a folder in place of the reviews file makes appending the new review fail
+        Files.createDirectory(data.resolve("reviews0.csv"));
+        try (ProductManager pm = newManager(1)) {
+            pm.reviewProduct(0, Rating.FIVE_STAR, "kept");
+            pm.reviewProduct(1, Rating.TWO_STAR, "evicts product 0");
+            assertEquals(1, pm.getRatingSummary(0).getCount());
+            assertEquals(Rating.FIVE_STAR, pm.findProduct(0).getRating());
+            assertEquals(1, pm.getRatingSummary(1).getCount());
+            Files.delete(data.resolve("reviews0.csv"));
+            pm.flush();
+        }
+        assertEquals(1, Files.readAllLines(data.resolve("reviews0.csv")).size());
+    }
+}
@@ -0,0 +1,63 @@
+package labs.pm.data;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MappedReviewStoreTest {
+    @TempDir
+    Path folder;
+
+    @Test
+    void keepsBufferedAndFlushedReviews() throws IOException {
+        try (MappedReviewStore store = new MappedReviewStore(folder.resolve("reviews.store"), 4)) {
+            ReviewStore.Reviews reviews = store.create(1, List.of(new Review(Rating.ONE_STAR, "loaded")));
+            List<Review> expected = new ArrayList<>(List.of(new Review(Rating.ONE_STAR, "loaded")));
+            for (int i = 0; i < 10; i++) {
+                Review review = new Review(Rating.values()[i % 6], (i % 3 == 0) ? null : "review " + i);
+                reviews.add(review);
+                expected.add(review);
+            }
+            assertEquals(expected.size(), reviews.size());
+            assertEquals(toStrings(expected), toStrings(reviews.toList()));
+            store.flush();
+            assertEquals(toStrings(expected), toStrings(reviews.toList()));
+        }
+    }
+
+    @Test
+    void growsAcrossSegments() throws IOException {
+        Path file = folder.resolve("reviews.store");
+        String comment = "x".repeat(1 << 20);
+        try (MappedReviewStore store = new MappedReviewStore(file, 1)) {
+            List<ReviewStore.Reviews> products = new ArrayList<>();
+            for (int id = 0; id < 3; id++) {
+                products.add(store.create(id, List.of()));
+            }
+            for (int i = 0; i < 72; i++) {
+                products.get(i % 3).add(new Review(Rating.FIVE_STAR, i + comment));
+            }
+            for (int id = 0; id < 3; id++) {
+                List<Review> reviews = products.get(id).toList();
+                assertEquals(24, reviews.size());
+                for (int i = 0; i < reviews.size(); i++) {
+                    assertEquals((i * 3 + id) + comment, reviews.get(i).getComments());
+                }
+            }
+        }
+        assertTrue(Files.size(file) > (64 << 20));
+    }
+
+    private static List<String> toStrings(List<Review> reviews) {
+        List<String> result = new ArrayList<>();
+        reviews.forEach(review -> result.add(review.getRating() + " " + review.getComments()));
+        return result;
+    }
+}
@@ -0,0 +1,117 @@
+package labs.pm.data;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProductEventStreamTest {
+
+    @Test
+    void publishesCreatedAndLoadedApartAndCompletesOnClose() throws InterruptedException {
+        ProductEventStream stream = new ProductEventStream(64, 8, new LongAdder());
+        Recorder recorder = new Recorder();
+        stream.getPublisher().subscribe(recorder);
+        assertTrue(recorder.subscribed.await(10, TimeUnit.SECONDS));
+        Drink tea = new Drink(1, "Tea", BigDecimal.ONE, Rating.NOT_RATED);
+        stream.added(tea);
+        stream.loaded(new Drink(2, "Coffee", BigDecimal.ONE, Rating.NOT_RATED));
+        stream.replaced(tea, tea.applyRating(Rating.FOUR_STAR));
+        stream.removed(tea);
+        stream.close();
+        assertTrue(recorder.completed.await(10, TimeUnit.SECONDS));
+        List<String> kinds = new ArrayList<>();
+        long sequence = 0;
+        for (ProductEvent event : recorder.events) {
+            kinds.add(event.getClass().getSimpleName());
+            assertEquals(++sequence, event.getSequence());
+        }
+        assertEquals(List.of("ProductCreated", "ProductLoaded", "ProductReviewed"), kinds);
+    }
+
+    @Test
+    void concurrentWritersGetGaplessNumbersInQueueOrder() throws Exception {
+        int threads = 8;
+        int eventsPerThread = 2000;
+        LongAdder dropped = new LongAdder();
+        ProductEventStream stream = new ProductEventStream(threads * eventsPerThread, 64, dropped);
+        Recorder recorder = new Recorder();
+        stream.getPublisher().subscribe(recorder);
+        assertTrue(recorder.subscribed.await(10, TimeUnit.SECONDS));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Drink drink = new Drink(t, "Drink" + t, BigDecimal.ONE, Rating.NOT_RATED);
+            futures.add(executor.submit(() -> {
+                Product previous = drink;
+                for (int i = 0; i < eventsPerThread; i++) {
+                    Product current = previous.applyRating(Rating.values()[i % Rating.values().length]);
+                    stream.replaced(previous, current);
+                    previous = current;
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+        stream.close();
+        assertTrue(recorder.completed.await(10, TimeUnit.SECONDS));
+        assertEquals(0, dropped.sum());
+        assertEquals(threads * eventsPerThread, recorder.events.size());
+        int[] next = new int[threads];
+        long sequence = 0;
+        for (ProductEvent event : recorder.events) {
+            assertEquals(++sequence, event.getSequence());
+            ProductReviewed reviewed = (ProductReviewed) event;
+            int id = reviewed.getProduct().getId();
+            assertEquals(Rating.values()[next[id]++ % Rating.values().length], reviewed.getProduct().getRating());
+        }
+    }
+
+    @Test
+    void subscriberAfterCloseIsCompleted() throws InterruptedException {
+        ProductEventStream stream = new ProductEventStream(64, 8, new LongAdder());
+        stream.close();
+        Recorder recorder = new Recorder();
+        stream.getPublisher().subscribe(recorder);
+        assertTrue(recorder.completed.await(10, TimeUnit.SECONDS));
+    }
+
+    private static class Recorder implements Flow.Subscriber<List<ProductEvent>> {
+        private final List<ProductEvent> events = new ArrayList<>();
+        private final CountDownLatch subscribed = new CountDownLatch(1);
+        private final CountDownLatch completed = new CountDownLatch(1);
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+            subscribed.countDown();
+        }
+
+        @Override
+        public void onNext(List<ProductEvent> batch) {
+            events.addAll(batch);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            completed.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            completed.countDown();
+        }
+    }
+}
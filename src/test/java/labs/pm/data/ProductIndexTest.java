@@ -0,0 +1,44 @@
+package labs.pm.data;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProductIndexTest {
+    private final ProductIndex index = new ProductIndex(4, id -> Math.floorMod(id, 4));
+
+    @Test
+    void findsCandidatesThroughTheSmallestIndex() {
+        LocalDate today = LocalDate.of(2024, 3, 1);
+        for (int id = 0; id < 100; id++) {
+            index.added(new Food(id, "Food" + id, BigDecimal.valueOf(id, 2), Rating.values()[id % 6], today.plusDays(id % 10)));
+        }
+        List<Product> candidates = index.candidates(ProductFilter.all()
+                .withRating(Rating.ONE_STAR)
+                .withPriceBetween(BigDecimal.valueOf(10, 2), BigDecimal.valueOf(14, 2)));
+        assertEquals(5, candidates.size());
+        assertEquals(10, index.candidates(ProductFilter.all().withBestBeforeBetween(today, today)).size());
+        assertNull(index.candidates(ProductFilter.all()));
+    }
+
+    @Test
+    void replacedProductIsTheCurrentInstanceInEveryIndex() {
+        Drink first = new Drink(5, "Tea", new BigDecimal("1.00"), Rating.THREE_STAR);
+        index.added(first);
+        Drink sameRating = (Drink) first.applyRating(Rating.THREE_STAR);
+        index.replaced(first, sameRating);
+        assertSame(sameRating, index.candidates(ProductFilter.all().withRating(Rating.THREE_STAR)).get(0));
+        assertSame(sameRating, index.candidates(ProductFilter.all().withPriceBetween(null, BigDecimal.ONE)).get(0));
+        Drink reRated = (Drink) sameRating.applyRating(Rating.FIVE_STAR);
+        index.replaced(sameRating, reRated);
+        assertTrue(index.candidates(ProductFilter.all().withRating(Rating.THREE_STAR)).isEmpty());
+        assertSame(reRated, index.candidates(ProductFilter.all().withRating(Rating.FIVE_STAR)).get(0));
+        assertSame(reRated, index.candidates(ProductFilter.all().withPriceBetween(null, BigDecimal.ONE)).get(0));
+        index.removed(reRated);
+        assertTrue(index.candidates(ProductFilter.all().withPriceBetween(null, BigDecimal.ONE)).isEmpty());
+    }
+}
@@ -0,0 +1,159 @@
+package labs.pm.data;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PropertyResourceBundle;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.ObjectName;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProductManagerTest {
+    @TempDir
+    Path folder;
+
+    private ProductManager pm;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        pm = ProductManager.builder()
+                .dataFolder(Files.createDirectories(folder.resolve("data")))
+                .tempFolder(folder.resolve("temp"))
+                .reportFolder(Files.createDirectories(folder.resolve("reports")))
+                .property("metrics.enabled", "false")
+                .build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        pm.close();
+    }
+
+    @Test
+    void reportReplacesLongerPreviousFile() throws IOException {
+        pm.createProduct(1234, "Tea", new BigDecimal("1.99"), Rating.NOT_RATED);
+        pm.reviewProduct(1234, Rating.FOUR_STAR, "Nice");
+        Path report = folder.resolve("reports/product1234report_c1.txt");
+        Files.writeString(report, "stale ".repeat(10_000));
+        pm.printProductReport(1234, "en-GB", "c1");
+        String text = Files.readString(report);
+        assertTrue(text.contains("Tea"));
+        assertFalse(text.contains("stale"));
+        try (var files = Files.list(folder.resolve("reports"))) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    @Test
+    void pagesVisitEveryProductOnceInOrder() {
+        for (int id = 0; id < 25; id++) {
+            pm.createProduct(id, "Drink" + id, BigDecimal.valueOf(100 - id % 7, 2), Rating.NOT_RATED);
+        }
+        Comparator<Product> byPrice = Comparator.comparing(Product::getPrice);
+        List<Product> all = pm.findProducts(product -> true, byPrice, Integer.MAX_VALUE);
+        assertEquals(25, all.size());
+        List<Product> paged = new ArrayList<>();
+        ProductPage page = pm.findProducts(product -> true, byPrice, null, 10);
+        paged.addAll(page.getProducts());
+        while (page.hasNext()) {
+            page = pm.findProducts(product -> true, byPrice, page.getNext(), 10);
+            paged.addAll(page.getProducts());
+        }
+        assertEquals(all, paged);
+        ProductPage whole = pm.findProducts(product -> true, byPrice, null, Integer.MAX_VALUE);
+        assertEquals(all, whole.getProducts());
+        assertFalse(whole.hasNext());
+        assertThrows(IllegalArgumentException.class, () -> pm.findProducts(product -> true, byPrice, null, 0));
+    }
+
+    @Test
+    void closeReleasesEventsReportsAndMetrics() throws Exception {
+        ObjectName pattern = new ObjectName("labs.pm.data:type=ProductManager,*");
+        int registered = ManagementFactory.getPlatformMBeanServer().queryNames(pattern, null).size();
+        ProductManager journaled = ProductManager.builder()
+                .dataFolder(folder.resolve("data"))
+                .tempFolder(folder.resolve("journaled"))
+                .reportFolder(folder.resolve("reports"))
+                .property("journal.enabled", "true")
+                .property("metrics.enabled", "true")
+                .build();
+        assertEquals(registered + 1, ManagementFactory.getPlatformMBeanServer().queryNames(pattern, null).size());
+        CompletableFuture<Void> completed = new CompletableFuture<>();
+        journaled.getEvents().subscribe(new Flow.Subscriber<>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(List<ProductEvent> item) {
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                completed.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                completed.complete(null);
+            }
+        });
+        journaled.createProduct(1, "Tea", new BigDecimal("1.99"), Rating.NOT_RATED);
+        CompletableFuture<Path> report = journaled.printProductReportAsync(1, "en-GB", "c1");
+        journaled.close();
+        journaled.close();
+        assertTrue(report.isDone());
+        assertTrue(Files.exists(report.get()));
+        completed.get(10, TimeUnit.SECONDS);
+        assertEquals(registered, ManagementFactory.getPlatformMBeanServer().queryNames(pattern, null).size());
+        ExecutionException rejected = assertThrows(ExecutionException.class,
+                () -> journaled.printProductReportAsync(1, "en-GB", "c2").get());
+        assertInstanceOf(RejectedExecutionException.class, rejected.getCause());
+    }
+
+    @Test
+    void configWithoutTuningKeysUsesDefaults() throws Exception {
+        String properties = String.join("\n",
+                "product.data.format={0},{1},{2},{3},{4},{5}",
+                "review.data.format={0},{1}",
+                "report.folder=" + folder.resolve("reports"),
+                "data.folder=" + folder.resolve("data"),
+                "temp.folder=" + folder.resolve("temp"),
+                "report.file=product{0}report_{1}.txt",
+                "product.data.file=product{0}.csv",
+                "reviews.data.file=reviews{0}.csv",
+                "temp.file={0}.tmp",
+                "metrics.enabled=true");
+        PropertyResourceBundle config = new PropertyResourceBundle(
+                new StringReader(properties.replace("\\", "\\\\")));
+        ObjectName pattern = new ObjectName("labs.pm.data:type=ProductManager,*");
+        int registered = ManagementFactory.getPlatformMBeanServer().queryNames(pattern, null).size();
+        try (ProductManager old = ProductManager.builder().config(config).build()) {
+            old.createProduct(1, "Tea", new BigDecimal("1.99"), Rating.NOT_RATED);
+            assertEquals("Tea", old.findProduct(1).getName());
+            assertEquals(registered + 1, ManagementFactory.getPlatformMBeanServer().queryNames(pattern, null).size());
+        }
+        try (ProductManager overridden = ProductManager.builder().config(config)
+                .property("metrics.enabled", "false").build()) {
+            assertEquals(registered, ManagementFactory.getPlatformMBeanServer().queryNames(pattern, null).size());
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package labs.pm.data;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProductStoreTest {
+
+    private static ProductStore newStore(boolean columnar) {
+        return new ProductStore(16, new HeapReviewStore(), new Metrics(false, 1), columnar);
+    }
+
+    private static boolean put(ProductStore store, Product product) {
+        Lock writeLock = store.writeLock(product.getId());
+        try {
+            writeLock.lock();
+            return store.putIfAbsent(store.newRecord(product, List.of()));
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private static Drink drink(int id) {
+        return new Drink(id, "Drink" + id, BigDecimal.valueOf(id % 100 + 1, 2), Rating.NOT_RATED);
+    }
+
+    @Test
+    void putIfAbsentKeepsTheFirstRecord() {
+        ProductStore store = newStore(false);
+        assertTrue(put(store, drink(1)));
+        assertFalse(put(store, new Drink(1, "Other", BigDecimal.ONE, Rating.NOT_RATED)));
+        assertEquals("Drink1", store.get(1).getProduct().getName());
+        assertNull(store.get(2));
+    }
+
+    @Test
+    void concurrentReviewsAcrossStripesAreAllCounted() throws Exception {
+        ProductStore store = newStore(false);
+        int productCount = 64;
+        for (int id = 0; id < productCount; id++) {
+            put(store, drink(id));
+        }
+        AtomicInteger notified = new AtomicInteger();
+        store.addListener(new CountingListener(notified));
+        int threads = 8;
+        int reviewsPerThread = 2000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int offset = t;
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < reviewsPerThread; i++) {
+                    int id = (offset + i) % productCount;
+                    Lock writeLock = store.writeLock(id);
+                    try {
+                        writeLock.lock();
+                        store.addReview(store.get(id), new Review(Rating.FOUR_STAR, "review"));
+                    } finally {
+                        writeLock.unlock();
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+        int total = 0;
+        for (int id = 0; id < productCount; id++) {
+            ProductRecord record = store.get(id);
+            total += record.getReviewCount();
+            assertEquals(Rating.FOUR_STAR, record.getProduct().getRating());
+        }
+        assertEquals(threads * reviewsPerThread, total);
+        assertEquals(threads * reviewsPerThread, notified.get());
+    }
+
+    @Test
+    void columnarScanMatchesObjectScan() {
+        ProductStore objects = newStore(false);
+        ProductStore columns = newStore(true);
+        for (int id = 0; id < 1000; id++) {
+            put(objects, drink(id));
+            put(columns, drink(id));
+        }
+        ProductFilter filter = ProductFilter.all().withPriceBetween(BigDecimal.valueOf(50, 2), null);
+        List<Integer> expected = new ArrayList<>();
+        List<Integer> actual = new ArrayList<>();
+        objects.forEach(filter, product -> expected.add(product.getId()));
+        columns.forEach(filter, product -> actual.add(product.getId()));
+        expected.sort(null);
+        actual.sort(null);
+        assertEquals(510, expected.size());
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    void removeNotifiesListeners() {
+        ProductStore store = newStore(false);
+        put(store, drink(7));
+        AtomicInteger removed = new AtomicInteger();
+        store.addListener(new CountingListener(removed) {
+            @Override
+            public void removed(Product product) {
+                removed.incrementAndGet();
+            }
+        });
+        assertNotNull(store.remove(7));
+        assertNull(store.remove(7));
+        assertNull(store.get(7));
+        assertEquals(1, removed.get());
+    }
+
+    private static class CountingListener implements ProductStore.Listener {
+        private final AtomicInteger replaced;
+
+        CountingListener(AtomicInteger replaced) {
+            this.replaced = replaced;
+        }
+
+        @Override
+        public void added(Product product) {
+        }
+
+        @Override
+        public void replaced(Product previous, Product current) {
+            replaced.incrementAndGet();
+        }
+
+        @Override
+        public void removed(Product product) {
+        }
+
+        @Override
+        public void cleared() {
+        }
+    }
+}
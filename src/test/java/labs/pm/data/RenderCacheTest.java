@@ -0,0 +1,34 @@
+package labs.pm.data;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RenderCacheTest {
+
+    @Test
+    void staysWithinCapacityAndCountsHits() {
+        RenderCache<String> cache = new RenderCache<>(16 * 100);
+        for (int i = 0; i < 1000; i++) {
+            cache.put("report" + i, "x".repeat(10));
+        }
+        CacheStatistics statistics = cache.getStatistics();
+        assertTrue(statistics.getWeight() <= 16 * 100);
+        assertEquals(statistics.getSize() * 10L, statistics.getWeight());
+        assertEquals(1000 - statistics.getSize(), statistics.getEvictions());
+        assertEquals("x".repeat(10), cache.get("report999"));
+        assertNull(cache.get("report0"));
+        assertEquals(1, cache.getStatistics().getHits());
+        assertEquals(1, cache.getStatistics().getMisses());
+    }
+
+    @Test
+    void recentlyReadEntriesAreKept() {
+        RenderCache<String> cache = new RenderCache<>(16 * 30);
+        cache.put("hot", "x".repeat(10));
+        for (int i = 0; i < 1000; i++) {
+            cache.put("cold" + i, "x".repeat(10));
+            assertNotNull(cache.get("hot"));
+        }
+    }
+}
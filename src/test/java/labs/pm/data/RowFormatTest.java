@@ -0,0 +1,93 @@
+package labs.pm.data;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.text.ParseException;
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RowFormatTest {
+    private final RowFormat format = RowFormat.compile("{0},{1},{2},{3}");
+
+    @Test
+    void readsPlainFields() throws ParseException {
+        RowFormat.Row row = format.newRow();
+        row.reset("F,101,Tea,1.99", 1);
+        assertEquals('F', row.getChar(0));
+        assertEquals(101, row.getInt(1));
+        assertEquals("Tea", row.getString(2));
+        assertEquals(new BigDecimal("1.99"), row.getDecimal(3));
+    }
+
+    @Test
+    void readsQuotedFields() throws ParseException {
+        RowFormat.Row row = format.newRow();
+        row.reset("D,7,\"Tea, \"\"green\"\"\",2", 1);
+        assertEquals("Tea, \"green\"", row.getString(2));
+        assertEquals(BigDecimal.valueOf(2), row.getDecimal(3));
+    }
+
+    @Test
+    void lastFieldTakesTheRestOfTheLine() throws ParseException {
+        RowFormat reviews = RowFormat.compile("{0},{1}");
+        RowFormat.Row row = reviews.newRow();
+        row.reset("4,Nice, really nice", 1);
+        assertEquals("Nice, really nice", row.getString(1));
+    }
+
+    @Test
+    void formatRoundTripsThroughParse() throws ParseException {
+        StringBuilder line = new StringBuilder();
+        format.format(line, 'F', 12, "Cake, \"extra\"\nlarge", "3.50");
+        assertEquals("F,12,\"Cake, \"\"extra\"\" large\",3.50", line.toString());
+        RowFormat.Row row = format.newRow();
+        row.reset(line, 1);
+        assertEquals("Cake, \"extra\" large", row.getString(2));
+        assertEquals(new BigDecimal("3.50"), row.getDecimal(3));
+    }
+
+    @Test
+    void reportsMalformedRows() {
+        RowFormat.Row row = format.newRow();
+        assertThrows(ParseException.class, () -> row.reset("F,1,\"open,2", 3));
+        assertThrows(ParseException.class, () -> {
+            row.reset("F,x,Tea,1", 4);
+            row.getInt(1);
+        });
+        assertThrows(ParseException.class, () -> {
+            row.reset("F,1", 5);
+            row.getString(2);
+        });
+        RowFormat.Row number = RowFormat.compile("{0}").newRow();
+        for (String text : new String[]{".", "-.", "+.", "-", "1.2.3"}) {
+            assertThrows(ParseException.class, () -> {
+                number.reset(text, 7);
+                number.getDecimal(0);
+            }, text);
+        }
+        RowFormat dates = RowFormat.compile("{0}");
+        RowFormat.Row date = dates.newRow();
+        assertThrows(ParseException.class, () -> {
+            date.reset("2024-02-30", 6);
+            date.getDate(0);
+        });
+    }
+
+    @Test
+    void readsDecimalsLikeBigDecimal() throws ParseException {
+        RowFormat.Row row = RowFormat.compile("{0}").newRow();
+        for (String text : new String[]{"1.99", "-0.5", "-.5", ".5", "+.5", "5.", "-12", "0.000"}) {
+            row.reset(text, 1);
+            assertEquals(new BigDecimal(text), row.getDecimal(0), text);
+        }
+    }
+
+    @Test
+    void readsDates() throws ParseException {
+        RowFormat.Row row = RowFormat.compile("{0}").newRow();
+        row.reset("2024-02-29", 1);
+        assertEquals(LocalDate.of(2024, 2, 29), row.getDate(0));
+    }
+}
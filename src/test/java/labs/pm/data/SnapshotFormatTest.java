@@ -0,0 +1,64 @@
+package labs.pm.data;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnapshotFormatTest {
+    @TempDir
+    Path folder;
+
+    @Test
+    void roundTripsProductsAndReviews() throws IOException {
+        Map<Product, List<Review>> products = new HashMap<>();
+        products.put(new Food(1, "Cake", new BigDecimal("5.99"), Rating.FOUR_STAR, LocalDate.of(2024, 5, 1)),
+                List.of(new Review(Rating.FOUR_STAR, "Nice"), new Review(Rating.FIVE_STAR, null),
+                        new Review(Rating.FOUR_STAR, "Nice")));
+        products.put(new Drink(2, "Tea", new BigDecimal("1E+40"), Rating.NOT_RATED), List.of());
+        products.put(new Drink(3, "\u00c1gua", new BigDecimal("0.10"), Rating.ONE_STAR),
+                List.of(new Review(Rating.ONE_STAR, "\u00f1 ".repeat(100_000))));
+        Path file = folder.resolve("snapshot.1");
+        SnapshotFormat.write(file, products);
+        Map<Product, List<Review>> restored = SnapshotFormat.read(file);
+        assertEquals(products.size(), restored.size());
+        for (Map.Entry<Product, List<Review>> entry : restored.entrySet()) {
+            Product product = entry.getKey();
+            Product original = find(products, product.getId());
+            assertEquals(original.getClass(), product.getClass());
+            assertEquals(original.getName(), product.getName());
+            assertEquals(original.getPrice(), product.getPrice());
+            assertEquals(original.getRating(), product.getRating());
+            assertEquals(original.getBestBefore(), product.getBestBefore());
+            assertEquals(toStrings(products.get(original)), toStrings(entry.getValue()));
+        }
+    }
+
+    @Test
+    void rejectsOtherFiles() throws IOException {
+        Path file = folder.resolve("snapshot.2");
+        Files.write(file, new byte[64]);
+        assertThrows(IOException.class, () -> SnapshotFormat.read(file));
+    }
+
+    private static Product find(Map<Product, List<Review>> products, int id) {
+        return products.keySet().stream().filter(product -> product.getId() == id).findFirst().orElseThrow();
+    }
+
+    private static List<String> toStrings(List<Review> reviews) {
+        List<String> result = new ArrayList<>();
+        reviews.forEach(review -> result.add(review.getRating() + " " + review.getComments()));
+        return result;
+    }
+}